@@ -0,0 +1,198 @@
+package com.kaltura.playkit;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Measures the cost of {@link MessageBus#post(PKEvent)} with 1, 10 and 100 listeners, and of
+ * listener registration and group removal when players are recycled, compared to the previous
+ * implementation (HashSet merge per post, full scan of all event types per removed listener).
+ * Results are written to the log; there are no thresholds, so the test only fails on errors.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageBusBenchmarkTest {
+
+    private static final PKLog log = PKLog.get("MessageBusBenchmark");
+
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 20000;
+
+    private static final int RECYCLED_PLAYERS = 1000;
+    private static final int LIVE_PLAYERS = 10;      // Players that stay alive while others are recycled.
+    private static final int LISTENERS_PER_PLAYER = 4;  // Like an app plus a few analytics plugins.
+
+    private final PKEvent event = new PlayerEvent.PlayheadUpdated(1000, 60000);
+
+    @Test
+    public void postThroughput() {
+        for (int listenerCount : new int[]{1, 10, 100}) {
+            MessageBus bus = new MessageBus();
+            LegacyMessageBus legacyBus = new LegacyMessageBus();
+            for (int i = 0; i < listenerCount; i++) {
+                // A distinct instance each time: the bus ignores a listener that is already registered,
+                // and a non-capturing lambda is a single shared instance.
+                PKEvent.Listener<PlayerEvent.PlayheadUpdated> listener = new PKEvent.Listener<PlayerEvent.PlayheadUpdated>() {
+                    @Override
+                    public void onEvent(PlayerEvent.PlayheadUpdated event) {
+                    }
+                };
+                bus.addListener(this, PlayerEvent.playheadUpdated, listener);
+                legacyBus.addListener(PlayerEvent.playheadUpdated, listener);
+            }
+
+            long legacyNanos = measure(() -> legacyBus.post(event));
+            long currentNanos = measure(() -> bus.post(event));
+
+            log.i("post() with " + listenerCount + " listeners: before=" + legacyNanos / ITERATIONS + "ns/event" +
+                    " after=" + currentNanos / ITERATIONS + "ns/event");
+
+            bus.removeListeners(this);
+        }
+    }
+
+    @Test
+    public void recyclePlayers() {
+        MessageBus bus = new MessageBus();
+        LegacyMessageBus legacyBus = new LegacyMessageBus();
+        AtomicInteger liveDeliveries = new AtomicInteger();
+        AtomicInteger recycledDeliveries = new AtomicInteger();
+
+        for (int i = 0; i < LIVE_PLAYERS; i++) {
+            Object groupId = new Object();
+            subscribePlayer(groupId, bus::addListener, liveDeliveries);
+            subscribePlayer(groupId, legacyBus::addListener, liveDeliveries);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RECYCLED_PLAYERS; i++) {
+            Object groupId = new Object();
+            subscribePlayer(groupId, legacyBus::addListener, recycledDeliveries);
+            legacyBus.removeListeners(groupId);
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < RECYCLED_PLAYERS; i++) {
+            Object groupId = new Object();
+            subscribePlayer(groupId, bus::addListener, recycledDeliveries);
+            bus.removeListeners(groupId);
+        }
+        long currentNanos = System.nanoTime() - start;
+
+        log.i("Recycling " + RECYCLED_PLAYERS + " players: before=" + legacyNanos / 1000000 + "ms" +
+                " after=" + currentNanos / 1000000 + "ms");
+
+        // The live players are still subscribed, and only them.
+        bus.post(event);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertEquals(LIVE_PLAYERS * LISTENERS_PER_PLAYER, liveDeliveries.get());
+        assertEquals(0, recycledDeliveries.get());
+    }
+
+    private interface Subscriber {
+        void addListener(Object groupId, Enum type, PKEvent.Listener listener);
+    }
+
+    private static void subscribePlayer(Object groupId, Subscriber subscriber, AtomicInteger deliveries) {
+        for (int i = 0; i < LISTENERS_PER_PLAYER; i++) {
+            for (PlayerEvent.Type type : PlayerEvent.Type.values()) {
+                // A new instance per subscription, so that no listener is shared between players.
+                subscriber.addListener(groupId, type, new PKEvent.Listener() {
+                    @Override
+                    public void onEvent(PKEvent event) {
+                        deliveries.incrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    private long measure(Runnable post) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            post.run();
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            post.run();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Let the main looper drain the posted events before the next round.
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        return elapsed;
+    }
+
+    // The post() and removal paths as they were before the copy-on-write registry and the reverse index.
+    private static class LegacyMessageBus {
+        private final Handler postHandler = new Handler(Looper.getMainLooper());
+        private final Map<Object, Set<PKEvent.Listener>> listeners = Collections.synchronizedMap(new HashMap<>());
+        private final Map<Object, Set<PKEvent.Listener>> listenerGroups = Collections.synchronizedMap(new WeakHashMap<>());
+
+        void addListener(Object type, PKEvent.Listener listener) {
+            addToMap(type, listener, listeners);
+        }
+
+        void addListener(Object groupId, Enum type, PKEvent.Listener listener) {
+            addToMap(type, listener, listeners);
+            addToMap(groupId, listener, listenerGroups);
+        }
+
+        void removeListeners(Object groupId) {
+            final Set<PKEvent.Listener> groupListeners = listenerGroups.get(groupId);
+            if (groupListeners != null) {
+                for (PKEvent.Listener listener : groupListeners) {
+                    for (Set<PKEvent.Listener> listenerSet : listeners.values()) {
+                        listenerSet.remove(listener);
+                    }
+                }
+                listenerGroups.remove(groupId);
+            }
+        }
+
+        private static void addToMap(Object key, PKEvent.Listener listener, Map<Object, Set<PKEvent.Listener>> map) {
+            Set<PKEvent.Listener> listenerSet = map.get(key);
+            if (listenerSet == null) {
+                listenerSet = new HashSet<>();
+                map.put(key, listenerSet);
+            }
+            listenerSet.add(listener);
+        }
+
+        @SuppressWarnings("unchecked")
+        void post(final PKEvent event) {
+            final Set<PKEvent.Listener> postListeners = new HashSet<>();
+            postListeners.addAll(safeSet(listeners.get(event.eventType())));
+            postListeners.addAll(safeSet(listeners.get(event.getClass())));
+
+            if (!postListeners.isEmpty()) {
+                postHandler.post(() -> {
+                    for (PKEvent.Listener listener : postListeners) {
+                        listener.onEvent(event);
+                    }
+                });
+            }
+        }
+
+        private static Set<PKEvent.Listener> safeSet(Set<PKEvent.Listener> listeners) {
+            return listeners != null ? listeners : Collections.emptySet();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.kaltura.playkit.player;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.kaltura.playkit.PKMediaFormat;
+import com.kaltura.playkit.PKMediaSource;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Races local servers that stand in for CDNs, each with its own response delay.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CdnRacerTest {
+
+    private final OkHttpClient client = PKHttpClientManager.newClientBuilder().build();
+    private final List<MockWebServer> servers = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (MockWebServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    // A server that answers the probe after the delay.
+    private PKMediaSource cdn(String id, long delayMs, int responseCode) throws IOException {
+        final MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+                .setResponseCode(responseCode)
+                .setHeadersDelay(delayMs, TimeUnit.MILLISECONDS)
+                .setBody("#EXTM3U\n"));
+        server.start();
+        servers.add(server);
+        return new PKMediaSource().setId(id).setMediaFormat(PKMediaFormat.hls).setUrl(server.url("/master.m3u8").toString());
+    }
+
+    private PKMediaSource race(CdnRacer racer) throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicReference<PKMediaSource> winner = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> racer.start(source -> {
+            winner.set(source);
+            finished.countDown();
+        }));
+        assertTrue("race didn't finish", finished.await(10, TimeUnit.SECONDS));
+        return winner.get();
+    }
+
+    private void awaitProbes(CdnRacer racer) throws InterruptedException {
+        final long deadline = SystemClock.elapsedRealtime() + 10000;
+        while (racer.hasPendingProbes() && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse("probes didn't finish", racer.hasPendingProbes());
+    }
+
+    @Test
+    public void fastestWinsAndRanksFirst() throws Exception {
+        final PKMediaSource slow = cdn("slow", 600, 200);
+        final PKMediaSource broken = cdn("broken", 0, 500);
+        final PKMediaSource fast = cdn("fast", 50, 200);
+        final PKMediaSource medium = cdn("medium", 300, 200);
+
+        final CdnRacer racer = new CdnRacer(Arrays.asList(slow, broken, fast, medium), client, 2000);
+        assertSame(fast, race(racer));
+
+        awaitProbes(racer);
+        assertEquals(Arrays.asList(fast, medium, slow, broken), racer.getRanking());
+    }
+
+    @Test
+    public void failoverSkipsFailedSources() throws Exception {
+        final PKMediaSource first = cdn("first", 50, 200);
+        final PKMediaSource second = cdn("second", 200, 200);
+        final PKMediaSource third = cdn("third", 400, 200);
+
+        final CdnRacer racer = new CdnRacer(Arrays.asList(third, second, first), client, 2000);
+        assertSame(first, race(racer));
+        awaitProbes(racer);
+
+        assertSame(second, racer.getNextSource(Collections.singleton(first)));
+        assertSame(third, racer.getNextSource(new HashSet<>(Arrays.asList(first, second))));
+        assertNull(racer.getNextSource(new HashSet<>(Arrays.asList(first, second, third))));
+    }
+
+    @Test
+    public void noWinnerWhenAllAreSlowerThanTheTimeout() throws Exception {
+        final PKMediaSource slower = cdn("slower", 900, 200);
+        final PKMediaSource slow = cdn("slow", 600, 200);
+
+        // A winner would be the slow source, at 600ms.
+        final CdnRacer racer = new CdnRacer(Arrays.asList(slower, slow), client, 400);
+        assertNull(race(racer));
+
+        // The late responses still arrive within the probe timeout and are ranked.
+        awaitProbes(racer);
+        assertEquals(Arrays.asList(slow, slower), racer.getRanking());
+    }
+
+    @Test
+    public void noWinnerWhenAllFail() throws Exception {
+        final PKMediaSource a = cdn("a", 0, 500);
+        final PKMediaSource b = cdn("b", 0, 404);
+
+        final long start = SystemClock.elapsedRealtime();
+        assertNull(race(new CdnRacer(Arrays.asList(a, b), client, 5000)));
+        assertTrue("didn't finish before the timeout", SystemClock.elapsedRealtime() - start < 5000);
+    }
+}
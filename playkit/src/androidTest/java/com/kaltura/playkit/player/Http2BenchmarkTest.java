@@ -0,0 +1,159 @@
+package com.kaltura.playkit.player;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.kaltura.playkit.PKLog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Measures segment latency and the number of connections when fetching audio, video and text
+ * segments in parallel, with video switching bitrate every few segments like ABR does, over
+ * HTTP/1.1 and over HTTP/2 against a local TLS server. The requests go through the player's call
+ * factory, so HTTP/2 is negotiated with ALPN like with a CDN; the client only differs from the
+ * player's by trusting the local certificate. Results are written to the log; there are no
+ * thresholds, so the test only fails on errors or if the expected protocol wasn't negotiated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class Http2BenchmarkTest {
+
+    private static final PKLog log = PKLog.get("Http2Benchmark");
+
+    private static final int SEGMENTS = 40;
+    private static final int SEGMENTS_PER_BITRATE = 5;
+    private static final int[] VIDEO_BITRATES = {400, 800, 1600};
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    private static final long SERVER_DELAY_MS = 20;
+
+    private final Buffer segment = new Buffer().write(new byte[SEGMENT_BYTES]);
+    private MockWebServer server;
+    private HandshakeCertificates clientCertificates;
+
+    @Before
+    public void setUp() throws IOException {
+        final HeldCertificate localhost = new HeldCertificate.Builder()
+                .addSubjectAlternativeName(InetAddress.getByName("localhost").getCanonicalHostName())
+                .build();
+        clientCertificates = new HandshakeCertificates.Builder().addTrustedCertificate(localhost.certificate()).build();
+        PKHttpClientManager.clearHttp2FailedHosts();
+
+        server = new MockWebServer();
+        server.useHttps(new HandshakeCertificates.Builder().heldCertificate(localhost).build().sslSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeadersDelay(SERVER_DELAY_MS, TimeUnit.MILLISECONDS)
+                        .setBody(segment.clone());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void http1() throws Exception {
+        run(null, Protocol.HTTP_1_1);
+    }
+
+    @Test
+    public void http2() throws Exception {
+        run(new Http2Settings().setEnabledForAllHosts(true), Protocol.HTTP_2);
+    }
+
+    private void run(Http2Settings http2Settings, Protocol protocol) throws Exception {
+        server.start();
+
+        final OkHttpClient http1Client = PKHttpClientManager.newClientBuilder()
+                .connectionPool(new ConnectionPool())
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+                .build();
+        final Call.Factory client = http2Settings != null ? PKHttpClientManager.newHttp2CallFactory(http1Client, http2Settings) : http1Client;
+
+        final ExecutorService loaders = Executors.newFixedThreadPool(3);   // Audio, video and text loaders.
+        final List<Long> latencies = new ArrayList<>();
+        final long start = System.nanoTime();
+        try {
+            for (int i = 0; i < SEGMENTS; i++) {
+                final int bitrate = VIDEO_BITRATES[(i / SEGMENTS_PER_BITRATE) % VIDEO_BITRATES.length];
+                final List<Future<Long>> fetches = new ArrayList<>();
+                for (String path : new String[]{"/video/" + bitrate + "/" + i + ".m4s", "/audio/" + i + ".m4s", "/text/" + i + ".vtt"}) {
+                    fetches.add(loaders.submit(() -> fetch(client, path, protocol)));
+                }
+                for (Future<Long> fetch : fetches) {
+                    latencies.add(fetch.get());
+                }
+            }
+        } finally {
+            loaders.shutdown();
+        }
+        final long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // A request with sequence number 0 is the first one on its connection.
+        int connections = 0;
+        for (int i = 0; i < latencies.size(); i++) {
+            if (server.takeRequest().getSequenceNumber() == 0) {
+                connections++;
+            }
+        }
+
+        Collections.sort(latencies);
+        long sum = 0;
+        for (long latency : latencies) {
+            sum += latency;
+        }
+        log.i(protocol + ": " + latencies.size() + " segments in " + totalMs + "ms" +
+                ", mean=" + TimeUnit.NANOSECONDS.toMicros(sum / latencies.size()) + "us" +
+                ", p50=" + TimeUnit.NANOSECONDS.toMicros(latencies.get(latencies.size() / 2)) + "us" +
+                ", p90=" + TimeUnit.NANOSECONDS.toMicros(latencies.get(latencies.size() * 9 / 10)) + "us" +
+                ", connections=" + connections);
+    }
+
+    private long fetch(Call.Factory client, String path, Protocol protocol) throws IOException {
+        final long start = System.nanoTime();
+        final Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+        assertEquals(protocol, response.protocol());
+        final ResponseBody body = response.body();
+        if (body != null) {
+            body.bytes();
+            body.close();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,128 @@
+package com.kaltura.playkit.player;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a request that fails on an HTTP/2 connection is retried with HTTP/1.1, that a failure
+ * while the body is read moves the next requests to HTTP/1.1, and that the host stays on HTTP/1.1. The local TLS server negotiates the protocol with ALPN and the
+ * requests go through the player's call factory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class Http2FallbackTest {
+
+    private static final int HTTP2_INTERNAL_ERROR = 2;
+    private static final int BODY_SIZE = 64 * 1024;
+
+    private MockWebServer server;
+    private Call.Factory callFactory;
+
+    @Before
+    public void setUp() throws IOException {
+        final HeldCertificate localhost = new HeldCertificate.Builder()
+                .addSubjectAlternativeName(InetAddress.getByName("localhost").getCanonicalHostName())
+                .build();
+        final HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(localhost.certificate())
+                .build();
+        PKHttpClientManager.clearHttp2FailedHosts();
+
+        server = new MockWebServer();
+        server.useHttps(new HandshakeCertificates.Builder().heldCertificate(localhost).build().sslSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.start();
+
+        final OkHttpClient http1Client = PKHttpClientManager.newClientBuilder()
+                .connectionPool(new ConnectionPool())
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+                .build();
+        callFactory = PKHttpClientManager.newHttp2CallFactory(http1Client, new Http2Settings().addHost(server.getHostName()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        PKHttpClientManager.clearHttp2FailedHosts();
+        server.shutdown();
+    }
+
+    private Response fetch(String path) throws IOException {
+        return callFactory.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+    }
+
+    @Test
+    public void usesHttp2() throws IOException {
+        server.enqueue(new MockResponse().setBody("segment"));
+
+        final Response response = fetch("/1.m4s");
+        assertEquals(Protocol.HTTP_2, response.protocol());
+        assertEquals("segment", response.body().string());
+    }
+
+    @Test
+    public void retriesWithHttp1AfterStreamReset() throws IOException {
+        server.enqueue(new MockResponse()
+                .setSocketPolicy(SocketPolicy.RESET_STREAM_AT_START)
+                .setHttp2ErrorCode(HTTP2_INTERNAL_ERROR));
+        server.enqueue(new MockResponse().setBody("retried"));
+        server.enqueue(new MockResponse().setBody("next"));
+
+        final Response retried = fetch("/1.m4s");
+        assertEquals(Protocol.HTTP_1_1, retried.protocol());
+        assertEquals("retried", retried.body().string());
+
+        // The host is not tried with HTTP/2 again.
+        final Response next = fetch("/2.m4s");
+        assertEquals(Protocol.HTTP_1_1, next.protocol());
+        assertEquals("next", next.body().string());
+
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void usesHttp1AfterStreamErrorInBody() throws IOException {
+        // The headers arrive, then the connection drops halfway through the throttled body.
+        server.enqueue(new MockResponse()
+                .setBody(new Buffer().write(new byte[BODY_SIZE]))
+                .throttleBody(BODY_SIZE / 8, 100, TimeUnit.MILLISECONDS)
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        server.enqueue(new MockResponse().setBody("retried"));
+
+        final Response failed = fetch("/1.m4s");
+        assertEquals(Protocol.HTTP_2, failed.protocol());
+        try {
+            failed.body().bytes();
+            fail("the body was read despite the dropped stream");
+        } catch (IOException expected) {
+            // The caller retries, like ExoPlayer does.
+        }
+
+        final Response retried = fetch("/1.m4s");
+        assertEquals(Protocol.HTTP_1_1, retried.protocol());
+        assertEquals("retried", retried.body().string());
+    }
+}
@@ -14,52 +14,282 @@ package com.kaltura.playkit;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.view.Choreographer;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @SuppressWarnings("WeakerAccess")
 public class MessageBus {
 
     private static final PKLog log = PKLog.get("MessageBus");
 
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    /**
+     * Batch interval for {@link #enableBatchedDelivery(long)} that drains the batch once per display frame.
+     */
+    public static final long BATCH_PER_FRAME = 0;
+    private static final long BATCH_DISABLED = -1;
+
+    /**
+     * Default threshold for {@link #setSlowListenerCallback(long, SlowListenerCallback)}: one frame at 60 fps.
+     */
+    public static final long DEFAULT_SLOW_LISTENER_THRESHOLD_MS = 16;
+
+    /**
+     * Called on the listener's thread after a listener took longer than the threshold to handle an event.
+     */
+    public interface SlowListenerCallback {
+        void onSlowListener(PKEvent.Listener listener, PKEvent event, long durationNanos);
+    }
+
+    /**
+     * Returned by {@link #getUpdateInterval(Enum, Class, long)} when nobody listens to the event.
+     */
+    public static final long UPDATE_INTERVAL_NONE = -1;
+
+    /**
+     * Called on the main thread after listeners were added or removed. A burst of changes is reported once.
+     */
+    public interface SubscriptionsListener {
+        void onSubscriptionsChanged();
+    }
+
     private Handler postHandler = new Handler(Looper.getMainLooper());
-    private Map<Object, Set<PKEvent.Listener>> listeners;   // Key is the event type, value is the listeners to call.
-    private Map<Object, Set<PKEvent.Listener>> listenerGroups;  // Key is group id, value is the listeners to remove.
+
+    // Key is the event type or event class, value is the listeners to call.
+    // The arrays are never modified: writers replace them (under the bus lock), so post() can read without locking or copying.
+    private final Map<Object, Subscription[]> listeners = new ConcurrentHashMap<>();
+    private final Map<Object, Set<PKEvent.Listener>> listenerGroups = new WeakHashMap<>();  // Key is group id, value is the listeners to remove. Guarded by this.
+    private final Map<PKEvent.Listener, Set<Object>> listenerTypes = new HashMap<>();   // Reverse index: key is listener, value is the types it listens to. Guarded by this.
+    private final Map<PKEvent.Listener, Set<Object>> listenerGroupIds = new HashMap<>();   // Reverse index: key is listener, value is its groups, weakly held. Guarded by this.
+    private final Map<Object, SerialExecutor> groupExecutors = new WeakHashMap<>();  // Key is group id, value is the group's ordered executor. Guarded by this.
+    private final Map<Class, Coalescer> coalescers = new ConcurrentHashMap<>();    // Key is an event class that is delivered coalesced.
+
+    // Batched delivery: deliveries are queued here and drained in a single main-thread message.
+    private volatile long batchIntervalMs = BATCH_DISABLED;
+    private final ConcurrentLinkedQueue<Runnable> batch = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainAction = this::drainBatch;
+    private final Runnable frameScheduleAction = this::scheduleDrainOnNextFrame;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> drainBatch();
+
+    // Dispatch timing.
+    private final Map<PKEvent.Listener, PKDispatchStats> listenerStats = new WeakHashMap<>();   // Guarded by this.
+    private final ConcurrentMap<Enum, PKDispatchStats> eventTypeStats = new ConcurrentHashMap<>();
+    private volatile long slowListenerThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_LISTENER_THRESHOLD_MS);
+    private volatile SlowListenerCallback slowListenerCallback;
+
+    // Subscription change notification.
+    private volatile SubscriptionsListener subscriptionsListener;
+    private final AtomicBoolean subscriptionsChangePending = new AtomicBoolean();
+    private final Runnable subscriptionsChangedAction = this::dispatchSubscriptionsChanged;
+
+    @Nullable private volatile PKEventRecorder eventRecorder;
 
     public MessageBus() {
-        listeners = Collections.synchronizedMap(new HashMap<>());
-        listenerGroups = Collections.synchronizedMap(new WeakHashMap<>());
     }
 
     public void post(final PKEvent event) {
 
-        // Listeners that are listening for this event
-        final Set<PKEvent.Listener> postListeners = new HashSet<>();
+        final PKEventRecorder recorder = eventRecorder;
+        if (recorder != null) {
+            recorder.record(PKEventRecorder.SOURCE_BUS, event.eventType());
+        }
+
+        // Listeners that are listening for this event, as they are at the time of posting.
         // By event type (PlayerEvent.DURATION_CHANGED etc)
-        postListeners.addAll(safeSet(this.listeners.get(event.eventType())));
+        final Subscription[] typeListeners = listenersOf(event.eventType());
         // By event class (PlayerEvent.DurationChanged.class etc)
-        postListeners.addAll(safeSet(this.listeners.get(event.getClass())));
-
-        if (!postListeners.isEmpty()) {
-            postHandler.post(() -> {
-                for (PKEvent.Listener listener : postListeners) {
-                    // If the listener type does not match event type (programming error),
-                    // there will be a ClassCastException. Log it but don't crash.
-                    try {
-                        //noinspection unchecked
-                        listener.onEvent(event);
-                    } catch (ClassCastException e) {
-                        log.e("Wrong type of listener " + listener.getClass() + " for event (" + event.eventType() + ")", e);
-                    }
-                }
-            });
+        final Subscription[] classListeners = listenersOf(event.getClass());
+
+        if (typeListeners.length == 0 && classListeners.length == 0) {
+            return;
+        }
+
+        final Coalescer coalescer = coalescers.isEmpty() ? null : coalescers.get(event.getClass());
+        if (coalescer != null) {
+            // Replace the pending event, if any; only the first one of a burst schedules a delivery.
+            if (coalescer.pending.getAndSet(event) == null) {
+                enqueue(coalescer);
+            }
+            return;
+        }
+
+        enqueue(() -> dispatch(event, typeListeners, classListeners));
+    }
+
+    /**
+     * Record every posted event, including the ones nobody listens to, in a flight recorder.
+     * @param recorder Recorder to use, or null to stop recording.
+     */
+    public void setEventRecorder(@Nullable PKEventRecorder recorder) {
+        this.eventRecorder = recorder;
+    }
+
+    /**
+     * Collect events posted from any thread into a single queue, and deliver them in one main-thread
+     * message per batch instead of one message per event. Delivery order is the posting order.
+     * @param batchIntervalMs   {@link #BATCH_PER_FRAME} to deliver once per display frame, or a tick in milliseconds.
+     */
+    public void enableBatchedDelivery(long batchIntervalMs) {
+        this.batchIntervalMs = Math.max(BATCH_PER_FRAME, batchIntervalMs);
+    }
+
+    /**
+     * Go back to the default delivery mode, with a main-thread message per event.
+     * Events that are already batched are delivered before any event that is posted after this call.
+     */
+    public void disableBatchedDelivery() {
+        batchIntervalMs = BATCH_DISABLED;
+        postHandler.post(drainAction);
+    }
+
+    private void enqueue(Runnable delivery) {
+        final long interval = batchIntervalMs;
+        if (interval == BATCH_DISABLED) {
+            postHandler.post(delivery);
+            return;
+        }
+
+        batch.offer(delivery);
+        if (drainScheduled.compareAndSet(false, true)) {
+            if (interval > BATCH_PER_FRAME) {
+                postHandler.postDelayed(drainAction, interval);
+            } else if (Looper.myLooper() == Looper.getMainLooper()) {
+                scheduleDrainOnNextFrame();
+            } else {
+                // Choreographer instances are per-thread; get the main thread's one from the main thread.
+                postHandler.post(frameScheduleAction);
+            }
+        }
+    }
+
+    private void scheduleDrainOnNextFrame() {
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private void drainBatch() {
+        // Clear the flag first: an event that is offered after this point schedules the next drain.
+        drainScheduled.set(false);
+        Runnable delivery;
+        while ((delivery = batch.poll()) != null) {
+            delivery.run();
+        }
+    }
+
+    /**
+     * Enable or disable coalescing of an event class. Disabled by default for all classes.
+     * While an event of a coalescing class is still waiting for delivery, posting a newer event of the
+     * same class replaces the waiting one instead of queueing another delivery. Listeners therefore only
+     * get the latest event of a burst, which suits high-frequency, state-like events such as
+     * {@link PlayerEvent.PlayheadUpdated}, {@link PlayerEvent.PlaybackInfoUpdated} and {@link PlayerEvent.BytesLoaded}.
+     * Events of other classes are not affected.
+     * @param eventClass    Event class, as returned by the event's getClass().
+     * @param coalesce      true to coalesce events of this class.
+     */
+    public synchronized void setCoalescing(@NonNull Class<? extends PKEvent> eventClass, boolean coalesce) {
+        if (coalesce) {
+            if (!coalescers.containsKey(eventClass)) {
+                coalescers.put(eventClass, new Coalescer());
+            }
+        } else {
+            coalescers.remove(eventClass);
+        }
+    }
+
+    public boolean isCoalescing(@NonNull Class<? extends PKEvent> eventClass) {
+        return coalescers.containsKey(eventClass);
+    }
+
+    /**
+     * Check if posting an event would call anyone, for skipping the construction of events nobody listens to.
+     * @param eventType     Event type, as returned by the event's eventType().
+     * @param eventClass    Event class, as returned by the event's getClass().
+     * @return true if there is at least one listener for the event type or for the event class.
+     */
+    public boolean hasListeners(@Nullable Enum eventType, @Nullable Class<? extends PKEvent> eventClass) {
+        return listenersOf(eventType).length > 0 || listenersOf(eventClass).length > 0;
+    }
+
+    /**
+     * @param eventType Event type, as returned by the event's eventType().
+     * @return true if there is at least one listener that was added for the event type.
+     */
+    public boolean hasListeners(@Nullable Enum eventType) {
+        return listenersOf(eventType).length > 0;
+    }
+
+    /**
+     * @param eventClass Event class, as returned by the event's getClass().
+     * @return true if there is at least one listener that was added for the event class.
+     */
+    public boolean hasListeners(@Nullable Class<? extends PKEvent> eventClass) {
+        return listenersOf(eventClass).length > 0;
+    }
+
+    /**
+     * Get the update interval that the listeners of a periodic event asked for in
+     * {@link #addListener(Object, Enum, PKEvent.Listener, long)}: the producer of the event
+     * should post it at least this often.
+     * @param eventType         Event type, as returned by the event's eventType().
+     * @param eventClass        Event class, as returned by the event's getClass().
+     * @param defaultIntervalMs Interval of listeners that did not ask for one.
+     * @return the shortest interval in milliseconds, or {@link #UPDATE_INTERVAL_NONE} if there are no listeners.
+     */
+    public long getUpdateInterval(@Nullable Enum eventType, @Nullable Class<? extends PKEvent> eventClass, long defaultIntervalMs) {
+        long interval = UPDATE_INTERVAL_NONE;
+        interval = shortestInterval(listenersOf(eventType), interval, defaultIntervalMs);
+        interval = shortestInterval(listenersOf(eventClass), interval, defaultIntervalMs);
+        return interval;
+    }
+
+    private static long shortestInterval(Subscription[] subscriptions, long interval, long defaultIntervalMs) {
+        for (Subscription subscription : subscriptions) {
+            final long requested = subscription.updateIntervalMs > 0 ? subscription.updateIntervalMs : defaultIntervalMs;
+            if (interval == UPDATE_INTERVAL_NONE || requested < interval) {
+                interval = requested;
+            }
+        }
+        return interval;
+    }
+
+    /**
+     * Get notified when listeners are added or removed, for example to stop producing events nobody
+     * listens to. Only one listener is kept.
+     * @param listener Listener to call, or null to stop notifications.
+     */
+    public void setSubscriptionsListener(@Nullable SubscriptionsListener listener) {
+        this.subscriptionsListener = listener;
+    }
+
+    private void notifySubscriptionsChanged() {
+        if (subscriptionsListener != null && subscriptionsChangePending.compareAndSet(false, true)) {
+            postHandler.post(subscriptionsChangedAction);
+        }
+    }
+
+    private void dispatchSubscriptionsChanged() {
+        subscriptionsChangePending.set(false);
+        final SubscriptionsListener listener = subscriptionsListener;
+        if (listener != null) {
+            listener.onSubscriptionsChanged();
         }
     }
 
@@ -69,32 +299,127 @@ public class MessageBus {
         }
     }
 
-    private static Set<PKEvent.Listener> safeSet(@Nullable Set<PKEvent.Listener> listeners) {
-        return listeners != null ? listeners : Collections.emptySet();
+    private void dispatchLatest(PKEvent event) {
+        dispatch(event, listenersOf(event.eventType()), listenersOf(event.getClass()));
+    }
+
+    private void dispatch(PKEvent event, Subscription[] typeListeners, Subscription[] classListeners) {
+        for (Subscription subscription : typeListeners) {
+            subscription.deliver(event);
+        }
+        for (Subscription subscription : classListeners) {
+            // A listener that is registered both by type and by class is only called once.
+            if (!contains(typeListeners, subscription.listener)) {
+                subscription.deliver(event);
+            }
+        }
+    }
+
+    private void deliver(PKEvent event, PKEvent.Listener listener, PKDispatchStats stats) {
+        final long start = System.nanoTime();
+
+        // If the listener type does not match event type (programming error),
+        // there will be a ClassCastException. Log it but don't crash.
+        try {
+            //noinspection unchecked
+            listener.onEvent(event);
+        } catch (ClassCastException e) {
+            log.e("Wrong type of listener " + listener.getClass() + " for event (" + event.eventType() + ")", e);
+        }
+
+        final long duration = System.nanoTime() - start;
+        stats.record(duration);
+        final Enum eventType = event.eventType();
+        if (eventType != null) {
+            statsOf(eventType).record(duration);
+        }
+
+        if (duration >= slowListenerThresholdNanos) {
+            reportSlowListener(listener, event, duration);
+        }
+    }
+
+    private void reportSlowListener(PKEvent.Listener listener, PKEvent event, long durationNanos) {
+        log.w("Slow listener " + listener.getClass().getName() + " took " + TimeUnit.NANOSECONDS.toMillis(durationNanos) +
+                "ms to handle " + event.eventType());
+
+        final SlowListenerCallback callback = slowListenerCallback;
+        if (callback != null) {
+            callback.onSlowListener(listener, event, durationNanos);
+        }
+    }
+
+    @NonNull
+    private PKDispatchStats statsOf(@NonNull Enum eventType) {
+        PKDispatchStats stats = eventTypeStats.get(eventType);
+        if (stats == null) {
+            // Only allocates the first time a type is delivered.
+            final PKDispatchStats newStats = new PKDispatchStats();
+            stats = eventTypeStats.putIfAbsent(eventType, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Report listeners that take too long to handle an event. Slow calls are always logged;
+     * the callback is an additional hook (only one callback is kept).
+     * @param thresholdMs   A listener call that takes this long or longer is reported.
+     * @param callback      Callback to call, or null to only log.
+     */
+    public void setSlowListenerCallback(long thresholdMs, @Nullable SlowListenerCallback callback) {
+        this.slowListenerThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.slowListenerCallback = callback;
     }
 
+    /**
+     * @param listener A listener that was added to the bus.
+     * @return the dispatch timing of the listener, over all event types, or null if it was never added.
+     */
+    @Nullable
+    public synchronized PKDispatchStats getListenerStats(PKEvent.Listener listener) {
+        return listenerStats.get(listener);
+    }
+
+    /**
+     * @param eventType Event type, for example {@link PlayerEvent.Type#PLAYHEAD_UPDATED}.
+     * @return the dispatch timing of all listeners of the event type, or null if no such event was delivered.
+     */
+    @Nullable
+    public PKDispatchStats getEventTypeStats(Enum eventType) {
+        return eventType != null ? eventTypeStats.get(eventType) : null;
+    }
+
+    @NonNull
+    private Subscription[] listenersOf(@Nullable Object type) {
+        // ConcurrentHashMap does not accept null keys.
+        final Subscription[] array = type != null ? listeners.get(type) : null;
+        return array != null ? array : NO_SUBSCRIPTIONS;
+    }
 
     /**
      * Remove the listener regardless of event type.
      * @param listener Listener to remove.
      */
-    public void removeListener(PKEvent.Listener listener) {
-        // Remove the listener from the type:listeners map
-        for (Set<PKEvent.Listener> listenerSet : listeners.values()) {
-            listenerSet.remove(listener);
-        }
-
-        // Remove the listener from the groupId:listeners map
-        for (Set<PKEvent.Listener> listenerSet : listenerGroups.values()) {
-            listenerSet.remove(listener);
+    public synchronized void removeListener(PKEvent.Listener listener) {
+        // Remove the listener from the type:listeners map, only visiting the types it listens to
+        final Set<Object> types = listenerTypes.remove(listener);
+        if (types != null) {
+            for (Object type : types) {
+                removeFromType(type, listener);
+            }
         }
 
-        // Remove empty groups
-        final Iterator<Map.Entry<Object, Set<PKEvent.Listener>>> iterator = listenerGroups.entrySet().iterator();
-        while (iterator.hasNext()) {
-            final Set<PKEvent.Listener> value = iterator.next().getValue();
-            if (value == null || value.isEmpty()) {
-                iterator.remove();
+        // Remove the listener from the groupId:listeners map, only visiting its groups, and remove empty groups
+        final Set<Object> groupIds = listenerGroupIds.remove(listener);
+        if (groupIds != null) {
+            for (Object groupId : groupIds) {
+                final Set<PKEvent.Listener> listenerSet = listenerGroups.get(groupId);
+                if (listenerSet != null && listenerSet.remove(listener) && listenerSet.isEmpty()) {
+                    listenerGroups.remove(groupId);
+                }
             }
         }
     }
@@ -103,22 +428,59 @@ public class MessageBus {
      * Remove all listeners in the group regardless of event type.
      * @param groupId Group id of listeners to remove.
      */
-    public void removeListeners(Object groupId) {
+    public synchronized void removeListeners(Object groupId) {
         if (groupId == null) {
             return;
         }
 
-        final Set<PKEvent.Listener> listeners = listenerGroups.get(groupId);
+        final Set<PKEvent.Listener> groupListeners = listenerGroups.remove(groupId);
+        groupExecutors.remove(groupId);
+
+        if (groupListeners == null) {
+            return;
+        }
 
-        if (listeners != null) {
-            // Remove the listener from the type:listeners map
-            for (PKEvent.Listener listener : listeners) {
-                for (Set<PKEvent.Listener> listenerSet : this.listeners.values()) {
-                    listenerSet.remove(listener);
+        // Collect the group's listeners per type, using the reverse index, so that every
+        // affected array is rebuilt once regardless of how many of the group's listeners it has.
+        final Map<Object, Set<PKEvent.Listener>> removals = new HashMap<>();
+        for (PKEvent.Listener listener : groupListeners) {
+            final Set<Object> groupIds = listenerGroupIds.get(listener);
+            if (groupIds != null) {
+                groupIds.remove(groupId);
+                if (groupIds.isEmpty()) {
+                    listenerGroupIds.remove(listener);
                 }
             }
 
-            listenerGroups.remove(groupId);
+            final Set<Object> types = listenerTypes.remove(listener);
+            if (types == null) {
+                continue;
+            }
+            for (Object type : types) {
+                Set<PKEvent.Listener> typeRemovals = removals.get(type);
+                if (typeRemovals == null) {
+                    typeRemovals = new HashSet<>();
+                    removals.put(type, typeRemovals);
+                }
+                typeRemovals.add(listener);
+            }
+        }
+
+        // Remove the listeners from the type:listeners map
+        for (Map.Entry<Object, Set<PKEvent.Listener>> entry : removals.entrySet()) {
+            final Subscription[] current = listeners.get(entry.getKey());
+            if (current == null) {
+                continue;
+            }
+            final Subscription[] updated = without(current, entry.getValue());
+            if (updated.length == 0) {
+                listeners.remove(entry.getKey());
+            } else if (updated.length != current.length) {
+                listeners.put(entry.getKey(), updated);
+            }
+        }
+        if (!removals.isEmpty()) {
+            notifySubscriptionsChanged();
         }
     }
 
@@ -129,7 +491,34 @@ public class MessageBus {
      * @param listener  Listener to call when the event occurs.
      */
     public void addListener(Object groupId, Enum type, PKEvent.Listener listener) {
-        addListener(groupId, (Object)type, listener);
+        addListener(groupId, (Object)type, listener, null, 0);
+    }
+
+    /**
+     * Add listener with groupId, for a periodic event such as {@link PlayerEvent.Type#PLAYHEAD_UPDATED},
+     * declaring how often the listener needs it. The producer runs at the shortest interval that
+     * its listeners asked for (see {@link #getUpdateInterval(Enum, Class, long)}), and this listener
+     * is not called more often than its own interval.
+     * @param groupId           Group to which the listener belongs, for {@link #removeListeners(Object)}.
+     * @param type              Type of event to listen to.
+     * @param listener          Listener to call when the event occurs.
+     * @param updateIntervalMs  Required update interval in milliseconds, or 0 for the producer's default.
+     */
+    public void addListener(Object groupId, Enum type, PKEvent.Listener listener, long updateIntervalMs) {
+        addListener(groupId, (Object)type, listener, null, updateIntervalMs);
+    }
+
+    /**
+     * Add listener with groupId, to be called on the given executor instead of the main thread.
+     * Events are delivered to the group's listeners in posting order, even if the executor is
+     * multi-threaded. Use the same executor for all listeners of a group.
+     * @param groupId   Group to which the listener belongs, for {@link #removeListeners(Object)}.
+     * @param type      Type of event to listen to.
+     * @param listener  Listener to call when the event occurs.
+     * @param executor  Executor to call the listener on, or null for the main thread.
+     */
+    public void addListener(Object groupId, Enum type, PKEvent.Listener listener, @Nullable Executor executor) {
+        addListener(groupId, (Object)type, listener, executor, 0);
     }
 
     /**
@@ -139,23 +528,242 @@ public class MessageBus {
      * @param listener  Listener to call when the event occurs.
      */
     public <E extends PKEvent> void addListener(Object groupId, Class<E> type, PKEvent.Listener<E> listener) {
-        addListener(groupId, (Object)type, listener);
+        addListener(groupId, (Object)type, listener, null, 0);
+    }
+
+    /**
+     * Add listener with groupId, for a periodic event, declaring how often the listener needs it.
+     * See {@link #addListener(Object, Enum, PKEvent.Listener, long)}.
+     * @param groupId           Group to which the listener belongs, for {@link #removeListeners(Object)}.
+     * @param type              Type of event to listen to.
+     * @param listener          Listener to call when the event occurs.
+     * @param updateIntervalMs  Required update interval in milliseconds, or 0 for the producer's default.
+     */
+    public <E extends PKEvent> void addListener(Object groupId, Class<E> type, PKEvent.Listener<E> listener, long updateIntervalMs) {
+        addListener(groupId, (Object)type, listener, null, updateIntervalMs);
+    }
+
+    /**
+     * Add listener with groupId, to be called on the given executor instead of the main thread.
+     * See {@link #addListener(Object, Enum, PKEvent.Listener, Executor)}.
+     * @param groupId   Group to which the listener belongs, for {@link #removeListeners(Object)}.
+     * @param type      Type of event to listen to.
+     * @param listener  Listener to call when the event occurs.
+     * @param executor  Executor to call the listener on, or null for the main thread.
+     */
+    public <E extends PKEvent> void addListener(Object groupId, Class<E> type, PKEvent.Listener<E> listener, @Nullable Executor executor) {
+        addListener(groupId, (Object)type, listener, executor, 0);
     }
 
-    private void addListener(Object groupId, Object type, PKEvent.Listener listener) {
-        addToMap(type, listener, listeners);
-        addToMap(groupId, listener, listenerGroups);
+    private synchronized void addListener(Object groupId, Object type, PKEvent.Listener listener, @Nullable Executor executor, long updateIntervalMs) {
+        if (type == null || listener == null) {
+            log.w("addListener called with null type or listener - ignoring");
+            return;
+        }
+
+        final Subscription[] current = listenersOf(type);
+        if (!contains(current, listener)) {
+            listeners.put(type, append(current, new Subscription(listener, groupExecutor(groupId, executor), statsOf(listener), updateIntervalMs)));
+
+            Set<Object> types = listenerTypes.get(listener);
+            if (types == null) {
+                types = new HashSet<>();
+                listenerTypes.put(listener, types);
+            }
+            types.add(type);
+            notifySubscriptionsChanged();
+        }
+
+        Set<PKEvent.Listener> groupListeners = listenerGroups.get(groupId);
+        if (groupListeners == null) {
+            groupListeners = new HashSet<>();
+            listenerGroups.put(groupId, groupListeners);
+        }
+        groupListeners.add(listener);
+
+        Set<Object> groupIds = listenerGroupIds.get(listener);
+        if (groupIds == null) {
+            // Weak, like the group ids in listenerGroups.
+            groupIds = Collections.newSetFromMap(new WeakHashMap<>());
+            listenerGroupIds.put(listener, groupIds);
+        }
+        groupIds.add(groupId);
     }
 
-    private void addToMap(Object key, PKEvent.Listener listener, Map<Object, Set<PKEvent.Listener>> map) {
-        Set<PKEvent.Listener> listenerSet;
-        listenerSet = map.get(key);
-        if (listenerSet == null) {
-            listenerSet = new HashSet<>();
-            listenerSet.add(listener);
-            map.put(key, listenerSet);
+    // Must be called with the bus lock held.
+    @NonNull
+    private PKDispatchStats statsOf(PKEvent.Listener listener) {
+        PKDispatchStats stats = listenerStats.get(listener);
+        if (stats == null) {
+            stats = new PKDispatchStats();
+            listenerStats.put(listener, stats);
+        }
+        return stats;
+    }
+
+    // Must be called with the bus lock held.
+    @Nullable
+    private SerialExecutor groupExecutor(Object groupId, @Nullable Executor executor) {
+        if (executor == null) {
+            return null;
+        }
+
+        SerialExecutor serialExecutor = groupExecutors.get(groupId);
+        if (serialExecutor == null || serialExecutor.executor != executor) {
+            serialExecutor = new SerialExecutor(executor);
+            groupExecutors.put(groupId, serialExecutor);
+        }
+        return serialExecutor;
+    }
+
+    // Must be called with the bus lock held.
+    private void removeFromType(Object type, PKEvent.Listener listener) {
+        final Subscription[] current = listeners.get(type);
+        if (current == null || !contains(current, listener)) {
+            return;
+        }
+
+        final Subscription[] updated = without(current, listener);
+        if (updated.length == 0) {
+            listeners.remove(type);
         } else {
-            listenerSet.add(listener);
+            listeners.put(type, updated);
+        }
+        notifySubscriptionsChanged();
+    }
+
+    private static boolean contains(Subscription[] array, PKEvent.Listener listener) {
+        for (Subscription item : array) {
+            if (item.isFor(listener)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Subscription[] append(Subscription[] array, Subscription subscription) {
+        final Subscription[] updated = new Subscription[array.length + 1];
+        System.arraycopy(array, 0, updated, 0, array.length);
+        updated[array.length] = subscription;
+        return updated;
+    }
+
+    private static Subscription[] without(Subscription[] array, Set<PKEvent.Listener> removed) {
+        int remaining = 0;
+        for (Subscription item : array) {
+            if (!removed.contains(item.listener)) {
+                remaining++;
+            }
+        }
+
+        final Subscription[] updated = new Subscription[remaining];
+        int i = 0;
+        for (Subscription item : array) {
+            if (!removed.contains(item.listener)) {
+                updated[i++] = item;
+            }
+        }
+        return updated;
+    }
+
+    private static Subscription[] without(Subscription[] array, PKEvent.Listener listener) {
+        final Subscription[] updated = new Subscription[array.length - 1];
+        int i = 0;
+        for (Subscription item : array) {
+            if (!item.isFor(listener)) {
+                updated[i++] = item;
+            }
+        }
+        return updated;
+    }
+
+    // A listener, the executor it is called on (null for the main thread), its dispatch timing
+    // and the update interval it asked for (0 if none).
+    private class Subscription {
+        final PKEvent.Listener listener;
+        @Nullable final Executor executor;
+        final PKDispatchStats stats;
+        final long updateIntervalMs;
+        private final long minDeliveryGapNanos;
+        private long lastDeliveryNanos;     // Only accessed on the dispatching (main) thread.
+
+        Subscription(PKEvent.Listener listener, @Nullable Executor executor, PKDispatchStats stats, long updateIntervalMs) {
+            this.listener = listener;
+            this.executor = executor;
+            this.stats = stats;
+            this.updateIntervalMs = Math.max(0, updateIntervalMs);
+            // Allow some jitter, so that a producer ticking at exactly this interval is not throttled every other tick.
+            this.minDeliveryGapNanos = TimeUnit.MILLISECONDS.toNanos(this.updateIntervalMs) * 9 / 10;
+        }
+
+        boolean isFor(PKEvent.Listener listener) {
+            return this.listener == listener || this.listener.equals(listener);
+        }
+
+        void deliver(PKEvent event) {
+            if (minDeliveryGapNanos > 0) {
+                final long now = System.nanoTime();
+                if (lastDeliveryNanos != 0 && now - lastDeliveryNanos < minDeliveryGapNanos) {
+                    return;
+                }
+                lastDeliveryNanos = now;
+            }
+
+            if (executor == null) {
+                MessageBus.this.deliver(event, listener, stats);
+            } else {
+                try {
+                    executor.execute(() -> MessageBus.this.deliver(event, listener, stats));
+                } catch (RejectedExecutionException e) {
+                    log.w("Executor of listener " + listener.getClass() + " rejected event (" + event.eventType() + ")");
+                }
+            }
+        }
+    }
+
+    // Runs tasks one at a time, in submission order, on top of any executor.
+    private static class SerialExecutor implements Executor {
+        final Executor executor;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull final Runnable task) {
+            tasks.offer(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            active = tasks.poll();
+            if (active != null) {
+                executor.execute(active);
+            }
+        }
+    }
+
+    // Holds the latest undelivered event of a coalescing class. Posted to the handler once per burst.
+    private class Coalescer implements Runnable {
+        final AtomicReference<PKEvent> pending = new AtomicReference<>();
+
+        @Override
+        public void run() {
+            final PKEvent event = pending.getAndSet(null);
+            if (event != null) {
+                // Listeners are resolved now, since the event may have replaced one posted before a listener change.
+                dispatchLatest(event);
+            }
         }
     }
 
@@ -181,12 +789,18 @@ public class MessageBus {
      * @deprecated Please use {@link #removeListeners(Object)} with {@link #addListener(Object, Class, PKEvent.Listener)} or {@link #addListener(Object, Enum, PKEvent.Listener)}.
      */
     @Deprecated
-    public void remove(PKEvent.Listener listener, Enum... eventTypes) {
+    public synchronized void remove(PKEvent.Listener listener, Enum... eventTypes) {
+        final Set<Object> types = listenerTypes.get(listener);
         for (Enum eventType : eventTypes) {
-            Set<PKEvent.Listener> listenerSet = listeners.get(eventType);
-            if (listenerSet != null) {
-                listenerSet.remove(listener);
+            if (eventType != null) {
+                removeFromType(eventType, listener);
+                if (types != null) {
+                    types.remove(eventType);
+                }
             }
         }
+        if (types != null && types.isEmpty()) {
+            listenerTypes.remove(listener);
+        }
     }
 }
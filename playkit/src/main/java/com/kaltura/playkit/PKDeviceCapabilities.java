@@ -20,8 +20,6 @@ import android.content.pm.PackageManager;
 import android.drm.DrmInfo;
 import android.drm.DrmInfoRequest;
 import android.drm.DrmManagerClient;
-import android.media.MediaCodecInfo;
-import android.media.MediaCodecList;
 import android.media.MediaDrm;
 import android.media.UnsupportedSchemeException;
 import android.os.AsyncTask;
@@ -33,14 +31,13 @@ import android.util.Log;
 
 import com.google.gson.JsonObject;
 import com.kaltura.playkit.player.MediaSupport;
+import com.kaltura.playkit.player.PKMediaCapabilities;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -76,19 +73,19 @@ public class PKDeviceCapabilities {
             return;
         }
 
-        final SharedPreferences sharedPrefs = context.getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
-        String savedFingerprint = sharedPrefs.getString(PREFS_ENTRY_FINGERPRINT, null);
-
-        // If we already sent capabilities for this Android build, don't send again.
-        if (FINGERPRINT.equals(savedFingerprint)) {
-            reportSent = true;
-            return;
-        }
-
-        // Do everything else in a thread.
+        // Do everything in a thread, reading the preferences is disk I/O too.
         AsyncTask.execute(new Runnable() {
             @Override
             public void run() {
+                final SharedPreferences sharedPrefs = context.getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+                String savedFingerprint = sharedPrefs.getString(PREFS_ENTRY_FINGERPRINT, null);
+
+                // If we already sent capabilities for this Android build, don't send again.
+                if (FINGERPRINT.equals(savedFingerprint)) {
+                    reportSent = true;
+                    return;
+                }
+
                 sendReport(context, sharedPrefs);
             }
         });
@@ -239,38 +236,27 @@ public class PKDeviceCapabilities {
         return jsonArray;
     }
 
-    private JSONObject mediaCodecInfo(MediaCodecInfo mediaCodec) throws JSONException {
-        return new JSONObject()
-                .put("supportedTypes", jsonArray(mediaCodec.getSupportedTypes()));
-    }
-
+    // The report is sent from a background thread, so it can wait for the capabilities index.
     private JSONObject mediaCodecInfo() throws JSONException {
 
-        ArrayList<MediaCodecInfo> mediaCodecs = new ArrayList<>();
+        final PKMediaCapabilities capabilities = PKMediaCapabilities.load(context);
 
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
-            MediaCodecList mediaCodecList = new MediaCodecList(MediaCodecList.ALL_CODECS);
-            MediaCodecInfo[] codecInfos = mediaCodecList.getCodecInfos();
-
-            Collections.addAll(mediaCodecs, codecInfos);
-        } else {
-            for (int i = 0, n = MediaCodecList.getCodecCount(); i < n; i++) {
-                mediaCodecs.add(MediaCodecList.getCodecInfoAt(i));
-            }
-        }
-
-        ArrayList<MediaCodecInfo> decoders = new ArrayList<>();
-        for (MediaCodecInfo mediaCodec : mediaCodecs) {
-            if (!mediaCodec.isEncoder()) {
-                decoders.add(mediaCodec);
+        JSONObject jsonDecoders = new JSONObject();
+        for (String mimeType : capabilities.getMimeTypes()) {
+            for (PKMediaCapabilities.Decoder decoder : capabilities.getDecoders(mimeType)) {
+                JSONObject jsonDecoder = jsonDecoders.optJSONObject(decoder.name);
+                if (jsonDecoder == null) {
+                    jsonDecoder = new JSONObject()
+                            .put("supportedTypes", new JSONArray())
+                            .put("hardware", decoder.hardware)
+                            .put("secure", decoder.secure);
+                    jsonDecoders.put(decoder.name, jsonDecoder);
+                }
+                jsonDecoder.getJSONArray("supportedTypes").put(mimeType);
             }
         }
 
         JSONObject info = new JSONObject();
-        JSONObject jsonDecoders = new JSONObject();
-        for (MediaCodecInfo mediaCodec : decoders) {
-            jsonDecoders.put(mediaCodec.getName(), mediaCodecInfo(mediaCodec));
-        }
         info.put("decoders", jsonDecoders);
 
         return info;
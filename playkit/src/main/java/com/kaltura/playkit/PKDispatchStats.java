@@ -0,0 +1,119 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram of {@link PKEvent.Listener#onEvent(PKEvent)} calls, as measured by {@link MessageBus}.
+ * Bucket i counts the calls that took less than 2^i microseconds (and at least 2^(i-1));
+ * the last bucket also counts everything slower. Recording does not allocate.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PKDispatchStats {
+
+    public static final int BUCKET_COUNT = 24;  // Last bounded bucket is ~4 seconds.
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    void record(long durationNanos) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(durationNanos);
+
+        long max = maxNanos.get();
+        while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos)) {
+            max = maxNanos.get();
+        }
+
+        final long micros = durationNanos / 1000;
+        final int bucket = 64 - Long.numberOfLeadingZeros(micros);   // 0 for micros == 0
+        buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getAverageNanos() {
+        final long count = getCount();
+        return count > 0 ? getTotalNanos() / count : 0;
+    }
+
+    /**
+     * @return a copy of the bucket counters. See {@link #getBucketUpperBoundMicros(int)}.
+     */
+    public long[] getHistogram() {
+        long[] histogram = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            histogram[i] = buckets.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * @param bucket bucket index, 0 to {@link #BUCKET_COUNT} - 1.
+     * @return exclusive upper bound of the bucket, in microseconds. The last bucket is open-ended.
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Approximate percentile, as the upper bound of the bucket that contains it.
+     * @param percentile - 0 to 100.
+     * @return upper bound in microseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        final long[] histogram = getHistogram();
+        long total = 0;
+        for (long bucketCount : histogram) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final double target = total * Math.max(0, Math.min(100, percentile)) / 100.0;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += histogram[i];
+            if (seen >= target && histogram[i] > 0) {
+                return getBucketUpperBoundMicros(i);
+            }
+        }
+        return getBucketUpperBoundMicros(BUCKET_COUNT - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "PKDispatchStats{" +
+                "count=" + getCount() +
+                ", avgMicros=" + getAverageNanos() / 1000 +
+                ", maxMicros=" + getMaxNanos() / 1000 +
+                ", p50Micros=" + getPercentileMicros(50) +
+                ", p99Micros=" + getPercentileMicros(99) +
+                '}';
+    }
+}
@@ -30,32 +30,35 @@ public class PKDrmParams implements Parcelable {
         Unknown;
 
         @Nullable
-        private Boolean supported;
+        private volatile Boolean supported;
 
         public boolean isSupported() {
-            if (supported == null) {
-                switch (this) {
-                    case WidevineCENC:
-                        supported = MediaSupport.widevineModular();
-                        break;
-                    case PlayReadyCENC:
-                        supported = MediaSupport.playReady();
-                        break;
-                    case WidevineClassic:
-                        supported = MediaSupport.widevineClassic();
-                        break;
-                    case PlayReadyClassic:
-                    case FairPlay:
-                    case Unknown:
-                        supported = false;
-                        break;
-                    default:
-                        supported = false;
-                        break;
-                }
+            if (supported != null) {
+                return supported;
             }
-            return supported;
-
+            final boolean isSupported;
+            switch (this) {
+                case WidevineCENC:
+                    isSupported = MediaSupport.widevineModular();
+                    break;
+                case PlayReadyCENC:
+                    isSupported = MediaSupport.playReady();
+                    break;
+                case WidevineClassic:
+                    isSupported = MediaSupport.widevineClassic();
+                    break;
+                case PlayReadyClassic:
+                case FairPlay:
+                case Unknown:
+                default:
+                    isSupported = false;
+                    break;
+            }
+            // Before the DRM initialization is done the answer is only "not yet", so it isn't kept.
+            if (MediaSupport.isDrmSupportKnown()) {
+                supported = isSupported;
+            }
+            return isSupported;
         }
     }
 
@@ -0,0 +1,232 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flight recorder for player events: keeps the last events that were posted to the {@link MessageBus}
+ * and the raw events of the player engine, for incident analysis. Off by default; enable it with
+ * {@link Player.Settings#setEventRecorder(PKEventRecorder)}.
+ * <p>
+ * Events are kept in fixed-size primitive arrays, so recording doesn't allocate or lock. When an
+ * {@link PlayerEvent.Type#ERROR} is posted, the buffer is written to the error dump file (if set)
+ * as JSON lines, one event per line, oldest first:
+ * <pre>
+ * {"seq":41,"timeNanos":81234567890,"thread":1,"source":"engine","event":"PlayerEvent.Type.ERROR"}
+ * </pre>
+ * Timestamps are {@link System#nanoTime()} values, only meaningful relative to each other.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PKEventRecorder {
+
+    private static final PKLog log = PKLog.get("PKEventRecorder");
+
+    public static final int DEFAULT_CAPACITY = 512;
+
+    /** Event posted to the {@link MessageBus}. */
+    public static final int SOURCE_BUS = 0;
+    /** Raw event of the player engine, before it is turned into a {@link PKEvent}. */
+    public static final int SOURCE_ENGINE = 1;
+
+    private static final String[] SOURCE_NAMES = {"bus", "engine"};
+
+    private final int mask;
+    private final long[] sequences;
+    private final long[] timestamps;
+    private final long[] threadIds;
+    private final int[] eventCodes;
+    private final byte[] sources;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    // Event codes are (enum class index << 16 | ordinal). Replaced on the rare registration of a new enum class.
+    private volatile Class[] enumClasses = new Class[0];
+
+    @Nullable private volatile File errorDumpFile;
+    private final AtomicBoolean dumping = new AtomicBoolean();
+
+    public PKEventRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of events to keep; rounded up to a power of two.
+     */
+    public PKEventRecorder(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        sequences = new long[size];
+        timestamps = new long[size];
+        threadIds = new long[size];
+        eventCodes = new int[size];
+        sources = new byte[size];
+        for (int i = 0; i < size; i++) {
+            sequences[i] = -1;
+        }
+    }
+
+    /**
+     * @param file File to write the recorded events to when an error is posted, or null to not dump automatically.
+     * @return this recorder.
+     */
+    public PKEventRecorder setErrorDumpFile(@Nullable File file) {
+        this.errorDumpFile = file;
+        return this;
+    }
+
+    /**
+     * Record an event. Called by the player; can be called from any thread.
+     * @param source    {@link #SOURCE_BUS} or {@link #SOURCE_ENGINE}.
+     * @param eventType Type of the event.
+     */
+    public void record(int source, @Nullable Enum eventType) {
+        if (eventType == null) {
+            return;
+        }
+
+        final long sequence = nextSequence.getAndIncrement();
+        final int slot = (int) (sequence & mask);
+        timestamps[slot] = System.nanoTime();
+        threadIds[slot] = Thread.currentThread().getId();
+        eventCodes[slot] = codeOf(eventType);
+        sources[slot] = (byte) source;
+        // Written last: dump() skips slots whose sequence doesn't match, i.e. that are being overwritten.
+        sequences[slot] = sequence;
+
+        if (source == SOURCE_BUS && eventType == PlayerEvent.Type.ERROR) {
+            final File file = errorDumpFile;
+            if (file != null) {
+                dumpAsync(file);
+            }
+        }
+    }
+
+    /**
+     * Write the recorded events to a file on a background thread. Ignored if a dump is in progress.
+     * @param file File to write; replaced if it exists.
+     */
+    public void dumpAsync(@NonNull final File file) {
+        if (!dumping.compareAndSet(false, true)) {
+            return;
+        }
+        new Thread(() -> {
+            Writer writer = null;
+            try {
+                writer = new BufferedWriter(new FileWriter(file));
+                dump(writer);
+                log.d("Dumped recorded events to " + file);
+            } catch (IOException e) {
+                log.e("Failed to dump recorded events to " + file, e);
+            } finally {
+                if (writer != null) {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        log.w("Failed to close " + file);
+                    }
+                }
+                dumping.set(false);
+            }
+        }, "PKEventRecorder").start();
+    }
+
+    /**
+     * Write the recorded events as JSON lines, oldest first. Events that are recorded while
+     * writing may be left out.
+     * @param writer Writer to write to; not closed.
+     */
+    public void dump(@NonNull Writer writer) throws IOException {
+        final long end = nextSequence.get();
+        final long start = Math.max(0, end - sequences.length);
+        final Class[] classes = enumClasses;
+        final StringBuilder line = new StringBuilder(128);
+
+        for (long sequence = start; sequence < end; sequence++) {
+            final int slot = (int) (sequence & mask);
+            final long timestamp = timestamps[slot];
+            final long threadId = threadIds[slot];
+            final int code = eventCodes[slot];
+            final int source = sources[slot];
+            if (sequences[slot] != sequence) {
+                continue;
+            }
+
+            line.setLength(0);
+            line.append("{\"seq\":").append(sequence)
+                    .append(",\"timeNanos\":").append(timestamp)
+                    .append(",\"thread\":").append(threadId)
+                    .append(",\"source\":\"").append(source >= 0 && source < SOURCE_NAMES.length ? SOURCE_NAMES[source] : String.valueOf(source))
+                    .append("\",\"event\":\"").append(nameOf(classes, code))
+                    .append("\"}\n");
+            writer.write(line.toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return the number of events recorded since the recorder was created, including the ones that were overwritten.
+     */
+    public long getRecordedCount() {
+        return nextSequence.get();
+    }
+
+    private int codeOf(Enum eventType) {
+        final Class type = eventType.getDeclaringClass();
+        final Class[] classes = enumClasses;
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i] == type) {
+                return i << 16 | eventType.ordinal();
+            }
+        }
+        return register(type) << 16 | eventType.ordinal();
+    }
+
+    private synchronized int register(Class type) {
+        final Class[] classes = enumClasses;
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i] == type) {
+                return i;
+            }
+        }
+        final Class[] updated = new Class[classes.length + 1];
+        System.arraycopy(classes, 0, updated, 0, classes.length);
+        updated[classes.length] = type;
+        enumClasses = updated;
+        return classes.length;
+    }
+
+    private static String nameOf(Class[] classes, int code) {
+        final int classIndex = code >>> 16;
+        final int ordinal = code & 0xffff;
+        if (classIndex >= classes.length) {
+            return "unknown";
+        }
+        final Class type = classes[classIndex];
+        final Object[] constants = type.getEnumConstants();
+        final String constant = constants != null && ordinal < constants.length ? ((Enum) constants[ordinal]).name() : String.valueOf(ordinal);
+        final Class enclosing = type.getEnclosingClass();
+        return (enclosing != null ? enclosing.getSimpleName() + "." : "") + type.getSimpleName() + "." + constant;
+    }
+}
@@ -103,6 +103,14 @@ public class PKLog {
         return new PKLog(tag);
     }
 
+    /**
+     * Check if a message of the given level would be logged. Use it to avoid building
+     * log messages on hot paths when they would be dropped anyway.
+     */
+    public boolean isLoggable(@NonNull Level level) {
+        return this.level <= level.value && globalLevel <= level.value;
+    }
+
 
     // VERBOSE
 
@@ -23,6 +23,10 @@ public class PKMediaSource implements Parcelable {
     private String url;
     private PKMediaFormat mediaFormat;
     private List<PKDrmParams> drmData;
+    private String codecs;
+    private int videoWidth;
+    private int videoHeight;
+    private float frameRate;
 
     public PKMediaSource() {
     }
@@ -32,6 +36,10 @@ public class PKMediaSource implements Parcelable {
         url = in.readString();
         mediaFormat = Utils.byValue(PKMediaFormat.class, in.readString());
         drmData = in.createTypedArrayList(PKDrmParams.CREATOR);
+        codecs = in.readString();
+        videoWidth = in.readInt();
+        videoHeight = in.readInt();
+        frameRate = in.readFloat();
     }
 
     public String getId() {
@@ -73,6 +81,56 @@ public class PKMediaSource implements Parcelable {
         return this;
     }
 
+    public String getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Optional hint for the source selection: the codecs of the source, in RFC 6381 format, for
+     * example "hvc1.2.4.L153.B0" or "avc1.640028,mp4a.40.2". Sources whose video codec has a hardware
+     * decoder on the device are preferred.
+     *
+     * @param codecs - comma separated codecs.
+     * @return - the source.
+     */
+    public PKMediaSource setCodecs(String codecs) {
+        this.codecs = codecs;
+        return this;
+    }
+
+    public int getVideoWidth() {
+        return videoWidth;
+    }
+
+    public int getVideoHeight() {
+        return videoHeight;
+    }
+
+    /**
+     * Optional hint for the source selection: the largest video size of the source. Decoders that
+     * can't decode it are not counted.
+     *
+     * @return - the source.
+     */
+    public PKMediaSource setVideoSize(int width, int height) {
+        this.videoWidth = width;
+        this.videoHeight = height;
+        return this;
+    }
+
+    public float getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Optional hint for the source selection: the highest frame rate of the source.
+     *
+     * @return - the source.
+     */
+    public PKMediaSource setFrameRate(float frameRate) {
+        this.frameRate = frameRate;
+        return this;
+    }
 
     public boolean hasDrmParams() {
         return (drmData != null && drmData.size() > 0);
@@ -93,6 +151,10 @@ public class PKMediaSource implements Parcelable {
         } else {
             dest.writeTypedList(Collections.EMPTY_LIST);
         }
+        dest.writeString(codecs);
+        dest.writeInt(videoWidth);
+        dest.writeInt(videoHeight);
+        dest.writeFloat(frameRate);
     }
 
     public static final Creator<PKMediaSource> CREATOR = new Creator<PKMediaSource>() {
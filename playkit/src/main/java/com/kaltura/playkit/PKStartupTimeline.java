@@ -0,0 +1,156 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.kaltura.playkit.utils.Consts;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Startup timeline of a playback session, from {@link PlayKitManager#loadPlayer} (first session of
+ * a player only) and {@link Player#prepare(PKMediaConfig)} to the start of playback and the first
+ * rendered frame. Each phase holds the {@link SystemClock#elapsedRealtime()} of its first occurrence
+ * in the session; phases that didn't happen, like the DRM phases of clear media, are
+ * {@link Consts#TIME_UNSET}. Sent with {@link PlayerEvent.StartupTimeline} when both playback
+ * started and the first frame was rendered, in either order.
+ */
+public class PKStartupTimeline {
+
+    public enum Phase {
+        LOAD_PLAYER_STARTED,
+        PLAYER_LOADED,
+        SET_MEDIA,
+        SOURCE_SELECTED,
+        CDN_RACE_FINISHED,          // Only in multi-CDN mode.
+        PREPARE,
+        ENGINE_CREATION_STARTED,    // Only if the session created a new player engine.
+        ENGINE_CREATED,
+        MANIFEST_LOAD_STARTED,
+        MANIFEST_LOADED,
+        DRM_KEY_REQUESTED,
+        DRM_KEYS_LOADED,
+        FIRST_SEGMENT_LOAD_STARTED,
+        FIRST_SEGMENT_LOADED,
+        AUDIO_DECODER_INITIALIZED,
+        VIDEO_DECODER_INITIALIZED,
+        PLAYBACK_STARTED,
+        FIRST_FRAME_RENDERED
+    }
+
+    private final String sessionId;
+    private final long[] times = new long[Phase.values().length];
+
+    public PKStartupTimeline(String sessionId) {
+        this.sessionId = sessionId;
+        for (int i = 0; i < times.length; i++) {
+            times[i] = Consts.TIME_UNSET;
+        }
+    }
+
+    /**
+     * Record the phase now, unless it was already recorded.
+     */
+    public void mark(@NonNull Phase phase) {
+        mark(phase, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Record the phase at the given time, unless it was already recorded.
+     *
+     * @param realtimeMs - {@link SystemClock#elapsedRealtime()} of the phase.
+     */
+    public void mark(@NonNull Phase phase, long realtimeMs) {
+        if (times[phase.ordinal()] == Consts.TIME_UNSET) {
+            times[phase.ordinal()] = realtimeMs;
+        }
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return - the {@link SystemClock#elapsedRealtime()} of the phase, or {@link Consts#TIME_UNSET}.
+     */
+    public long getTime(@NonNull Phase phase) {
+        return times[phase.ordinal()];
+    }
+
+    /**
+     * @return - the time between the phases in milliseconds, or {@link Consts#TIME_UNSET} if one of them didn't happen.
+     */
+    public long getDuration(@NonNull Phase from, @NonNull Phase to) {
+        final long fromTime = getTime(from);
+        final long toTime = getTime(to);
+        if (fromTime == Consts.TIME_UNSET || toTime == Consts.TIME_UNSET) {
+            return Consts.TIME_UNSET;
+        }
+        return toTime - fromTime;
+    }
+
+    /**
+     * @return - the time from {@link Player#setMedia} to the first frame in milliseconds, or {@link Consts#TIME_UNSET}.
+     */
+    public long getTimeToFirstFrame() {
+        return getDuration(Phase.SET_MEDIA, Phase.FIRST_FRAME_RENDERED);
+    }
+
+    /**
+     * @return - the recorded phases in order of occurrence, with their time in milliseconds since the first one.
+     */
+    @NonNull
+    public Map<Phase, Long> getOffsets() {
+        long startTime = Long.MAX_VALUE;
+        for (long time : times) {
+            if (time != Consts.TIME_UNSET) {
+                startTime = Math.min(startTime, time);
+            }
+        }
+
+        final Map<Phase, Long> offsets = new LinkedHashMap<>();
+        final Phase[] phases = Phase.values();
+        // Phases are mostly recorded in declaration order; sort the few that aren't.
+        while (offsets.size() < phases.length) {
+            Phase next = null;
+            for (Phase phase : phases) {
+                if (times[phase.ordinal()] != Consts.TIME_UNSET && !offsets.containsKey(phase) &&
+                        (next == null || times[phase.ordinal()] < times[next.ordinal()])) {
+                    next = phase;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            offsets.put(next, times[next.ordinal()] - startTime);
+        }
+        return offsets;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{\"sessionId\":\"").append(sessionId).append("\",\"phases\":{");
+        boolean first = true;
+        for (Map.Entry<Phase, Long> entry : getOffsets().entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append('"').append(entry.getKey().name()).append("\":").append(entry.getValue());
+            first = false;
+        }
+        return sb.append("}}").toString();
+    }
+}
@@ -13,12 +13,15 @@
 package com.kaltura.playkit;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 
 import com.kaltura.playkit.player.MediaSupport;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 public class PlayKitManager {
 
@@ -53,9 +56,23 @@ public class PlayKitManager {
         return pluginFactory == null ? null : pluginFactory.newInstance();
     }
 
+    /**
+     * Start the initialization of PlayKit (DRM support and device workarounds) on a background thread.
+     * Apps can call it early, for example in Application.onCreate(), so that it's done when the first
+     * player is loaded. {@link #loadPlayer} starts it too, but doesn't wait for it.
+     *
+     * @param context - the application context.
+     * @return a future that completes with the supported DRM schemes when the initialization is done.
+     */
+    public static Future<Set<PKDrmParams.Scheme>> initialize(Context context) {
+        return MediaSupport.initializeAsync(context, null);
+    }
+
     public static Player loadPlayer(Context context, @Nullable PKPluginConfigs pluginConfigs) {
 
-        MediaSupport.initializeDrm(context, null);
+        final long loadPlayerTime = SystemClock.elapsedRealtime();
+
+        initialize(context);
 
         if (shouldSendDeviceCapabilitiesReport) {
             PKDeviceCapabilities.maybeSendReport(context);
@@ -63,6 +80,7 @@ public class PlayKitManager {
 
         PlayerLoader playerLoader = new PlayerLoader(context);
         playerLoader.load(pluginConfigs != null ? pluginConfigs : new PKPluginConfigs());
+        playerLoader.setLoadPlayerTimes(loadPlayerTime, SystemClock.elapsedRealtime());
         return playerLoader;
     }
 
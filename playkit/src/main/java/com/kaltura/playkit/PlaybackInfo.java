@@ -24,6 +24,9 @@ public class PlaybackInfo {
     private long videoThroughput;
     private long videoWidth;
     private long videoHeight;
+    private long throughputP10 = -1;
+    private long throughputP50 = -1;
+    private long throughputP90 = -1;
 
 
     public PlaybackInfo(long videoBitrate, long audioBitrate, long videoThroughput, long videoWidth, long videoHeight) {
@@ -34,6 +37,14 @@ public class PlaybackInfo {
         this.videoHeight = videoHeight;
     }
 
+    public PlaybackInfo(long videoBitrate, long audioBitrate, long videoThroughput, long videoWidth, long videoHeight,
+                        long throughputP10, long throughputP50, long throughputP90) {
+        this(videoBitrate, audioBitrate, videoThroughput, videoWidth, videoHeight);
+        this.throughputP10 = throughputP10;
+        this.throughputP50 = throughputP50;
+        this.throughputP90 = throughputP90;
+    }
+
     /**
      * @return - the current playing video track bitrate.
      */
@@ -69,13 +80,37 @@ public class PlaybackInfo {
         return videoHeight;
     }
 
+    /**
+     * @return - the 10th percentile of the throughput of the recent downloads, in bits per second, or -1 if unknown.
+     */
+    public long getThroughputP10() {
+        return throughputP10;
+    }
+
+    /**
+     * @return - the median throughput of the recent downloads, in bits per second, or -1 if unknown.
+     */
+    public long getThroughputP50() {
+        return throughputP50;
+    }
+
+    /**
+     * @return - the 90th percentile of the throughput of the recent downloads, in bits per second, or -1 if unknown.
+     */
+    public long getThroughputP90() {
+        return throughputP90;
+    }
+
     @Override
     public String toString() {
         String sb = "videoBitrate =" + videoBitrate + System.getProperty("line.separator") +
                 "audioBitrate =" + audioBitrate + System.getProperty("line.separator") +
                 "videoThroughput =" + videoThroughput + System.getProperty("line.separator") +
                 "videoWidth =" + videoWidth + System.getProperty("line.separator") +
-                "videoHeight =" + videoHeight + System.getProperty("line.separator");
+                "videoHeight =" + videoHeight + System.getProperty("line.separator") +
+                "throughputP10 =" + throughputP10 + System.getProperty("line.separator") +
+                "throughputP50 =" + throughputP50 + System.getProperty("line.separator") +
+                "throughputP90 =" + throughputP90 + System.getProperty("line.separator");
         return sb;
     }
 }
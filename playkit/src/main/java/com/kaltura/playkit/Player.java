@@ -16,7 +16,10 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.kaltura.playkit.player.ABRSettings;
+import com.kaltura.playkit.player.Http2Settings;
+import com.kaltura.playkit.player.MultiCdnSettings;
 import com.kaltura.playkit.player.LoadControlBuffers;
+import com.kaltura.playkit.player.MediaCacheSettings;
 import com.kaltura.playkit.player.PKAspectRatioResizeMode;
 import com.kaltura.playkit.player.PlayerView;
 import com.kaltura.playkit.player.SubtitleStyleSettings;
@@ -180,6 +183,41 @@ public interface Player {
          * @return - Player Settings
          */
         Settings setSurfaceAspectRatioResizeMode(PKAspectRatioResizeMode resizeMode);
+
+        /**
+         *  Set the Player's event flight recorder. Off (null) by default.
+         *  Applied on the next {@link Player#prepare(PKMediaConfig)}.
+         *
+         * @param eventRecorder - recorder of player events, or null to disable recording.
+         * @return - Player Settings
+         */
+        Settings setEventRecorder(PKEventRecorder eventRecorder);
+
+        /**
+         *  Set the Player's on-disk media cache. Off (null) by default.
+         *
+         * @param mediaCacheSettings - cache directory and budgets, or null to disable caching.
+         * @return - Player Settings
+         */
+        Settings setMediaCacheSettings(MediaCacheSettings mediaCacheSettings);
+
+        /**
+         *  Set the hosts that the Player fetches media from over HTTP/2. Off (null) by default,
+         *  all requests use HTTP/1.1. Only used with the "okhttp" http provider.
+         *
+         * @param http2Settings - HTTP/2 hosts, or null to use HTTP/1.1 only.
+         * @return - Player Settings
+         */
+        Settings setHttp2Settings(Http2Settings http2Settings);
+
+        /**
+         *  Set the Player's multi-CDN mode, which races the copies of the selected source, like the
+         *  same stream on other CDNs, and fails over between them. Off (null) by default.
+         *
+         * @param multiCdnSettings - probe timeout and failover threshold, or null to disable it.
+         * @return - Player Settings
+         */
+        Settings setMultiCdnSettings(MultiCdnSettings multiCdnSettings);
     }
 
     /**
@@ -196,6 +234,29 @@ public interface Player {
      */
     void prepare(@NonNull PKMediaConfig playerConfig);
 
+    /**
+     * Load the beginning of an upcoming entry in the background, so that a later
+     * {@link #prepare(PKMediaConfig)} of the same entry starts faster. Loads the manifest,
+     * the initialization segments and the first seconds of the default tracks into the media cache
+     * (see {@link Settings#setMediaCacheSettings(MediaCacheSettings)}); without a cache, only
+     * the connection to the media host is warmed up. A new preload cancels the previous one.
+     *
+     * @param mediaConfig - media configuration of the upcoming entry.
+     */
+    void preload(@NonNull PKMediaConfig mediaConfig);
+
+    /**
+     * Queue an entry to play right after the current one, without a gap: the player keeps its
+     * decoders and buffers, and sends SOURCE_SELECTED and DURATION_CHANGED when playback moves to
+     * the entry. ENDED is only sent at the end of the last entry. Entries that can't be played
+     * gapless (live, DRM, with ads or on an engine without playlist support) are not queued; play
+     * them with {@link #prepare(PKMediaConfig)}.
+     *
+     * @param mediaConfig - media configuration of the entry to queue.
+     * @return - true if the entry was queued.
+     */
+    boolean addToPlaylist(@NonNull PKMediaConfig mediaConfig);
+
     void updatePluginConfig(@NonNull String pluginName, @Nullable Object pluginConfig);
 
     /**
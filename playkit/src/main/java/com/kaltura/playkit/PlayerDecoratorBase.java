@@ -31,6 +31,16 @@ public class PlayerDecoratorBase implements Player {
         player.prepare(mediaConfig);
     }
 
+    @Override
+    public void preload(@NonNull PKMediaConfig mediaConfig) {
+        player.preload(mediaConfig);
+    }
+
+    @Override
+    public boolean addToPlaylist(@NonNull PKMediaConfig mediaConfig) {
+        return player.addToPlaylist(mediaConfig);
+    }
+
     @Override
     public long getDuration() {
         return player.getDuration();
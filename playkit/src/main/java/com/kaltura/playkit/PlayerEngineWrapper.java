@@ -201,6 +201,16 @@ public class PlayerEngineWrapper implements PlayerEngine {
         playerEngine.onOrientationChanged();
     }
 
+    @Override
+    public boolean addToPlaylist(PKMediaSourceConfig mediaSourceConfig) {
+        return playerEngine.addToPlaylist(mediaSourceConfig);
+    }
+
+    @Override
+    public void setPlaylistListener(PlaylistListener playlistListener) {
+        playerEngine.setPlaylistListener(playlistListener);
+    }
+
     public void setPlayerEngine(PlayerEngine playerEngine) {
         this.playerEngine = playerEngine;
     }
@@ -13,6 +13,7 @@
 package com.kaltura.playkit;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.kaltura.playkit.player.AudioTrack;
 import com.kaltura.playkit.player.PKAspectRatioResizeMode;
@@ -44,6 +45,7 @@ public class PlayerEvent implements PKEvent {
     public static final Class<VideoFramesDropped> videoFramesDropped = VideoFramesDropped.class;
     public static final Class<BytesLoaded> bytesLoaded = BytesLoaded.class;
     public static final Class<SurfaceAspectRationResizeModeChanged> surfaceAspectRationSizeModeChanged = SurfaceAspectRationResizeModeChanged.class;
+    public static final Class<StartupTimeline> startupTimeline = StartupTimeline.class;
 
     public static final PlayerEvent.Type canPlay = Type.CAN_PLAY;
     public static final PlayerEvent.Type ended = Type.ENDED;
@@ -131,10 +133,17 @@ public class PlayerEvent implements PKEvent {
     public static class SourceSelected extends PlayerEvent {
 
         public final PKMediaSource source;
+        // Why the source was selected over the other sources of the entry; null if not known.
+        @Nullable public final String selectionReason;
 
         public SourceSelected(PKMediaSource source) {
+            this(source, null);
+        }
+
+        public SourceSelected(PKMediaSource source, @Nullable String selectionReason) {
             super(Type.SOURCE_SELECTED);
             this.source = source;
+            this.selectionReason = selectionReason;
         }
     }
 
@@ -273,6 +282,16 @@ public class PlayerEvent implements PKEvent {
         }
     }
 
+    public static class StartupTimeline extends PlayerEvent {
+
+        public final PKStartupTimeline timeline;
+
+        public StartupTimeline(PKStartupTimeline timeline) {
+            super(Type.STARTUP_TIMELINE);
+            this.timeline = timeline;
+        }
+    }
+
     public enum Type {
         STATE_CHANGED,
         CAN_PLAY,   // Sent when enough data is available that the media can be played, at least for a couple of frames. This corresponds to the HAVE_ENOUGH_DATA readyState.
@@ -301,7 +320,8 @@ public class PlayerEvent implements PKEvent {
         VIDEO_FRAMES_DROPPED,   // Video frames were dropped, see PlayerEvent.VideoFramesDropped
         BYTES_LOADED,           // Bytes were downloaded from the network
         SUBTITLE_STYLE_CHANGED,  // Subtitle style is changed.
-        ASPECT_RATIO_RESIZE_MODE_CHANGED //Send when updating the Surface Vide Aspect Ratio size mode.
+        ASPECT_RATIO_RESIZE_MODE_CHANGED, //Send when updating the Surface Vide Aspect Ratio size mode.
+        STARTUP_TIMELINE // Sent once per session when playback started and the first frame was rendered, with the startup phases.
     }
 
     @Override
@@ -59,6 +59,8 @@ class PlayerLoader extends PlayerDecoratorBase {
         KalturaPlaybackRequestAdapter.install(playerController, context.getPackageName());
 
         playerController.setEventListener(messageBus::post);
+        playerController.setMessageBus(messageBus);
+        playerController.setPlaylistItemListener(this::updatePluginsMedia);
 
         Player player = playerController;
         PlayerEngineWrapper playerEngineWrapper = null;
@@ -92,6 +94,11 @@ class PlayerLoader extends PlayerDecoratorBase {
         setPlayer(player);
     }
 
+    // Reported with the startup timeline of the first session.
+    void setLoadPlayerTimes(long startRealtimeMs, long endRealtimeMs) {
+        playerController.setLoadPlayerTimes(startRealtimeMs, endRealtimeMs);
+    }
+
     @Override
     public void updatePluginConfig(@NonNull final String pluginName, @Nullable final Object pluginConfig) {
         LoadedPlugin loadedPlugin = loadedPlugins.get(pluginName);
@@ -145,9 +152,7 @@ class PlayerLoader extends PlayerDecoratorBase {
 
         super.prepare(mediaConfig);
 
-        for (Map.Entry<String, LoadedPlugin> loadedPluginEntry : loadedPlugins.entrySet()) {
-            loadedPluginEntry.getValue().plugin.onUpdateMedia(mediaConfig);
-        }
+        updatePluginsMedia(mediaConfig);
 //        messageBus.post(new Runnable() {
 //            @Override
 //            public void run() {
@@ -185,6 +190,13 @@ class PlayerLoader extends PlayerDecoratorBase {
         setPlayer(currentLayer);
     }
 
+    // Also called when playback moves to an entry of the gapless playlist.
+    private void updatePluginsMedia(PKMediaConfig mediaConfig) {
+        for (Map.Entry<String, LoadedPlugin> loadedPluginEntry : loadedPlugins.entrySet()) {
+            loadedPluginEntry.getValue().plugin.onUpdateMedia(mediaConfig);
+        }
+    }
+
     private PKPlugin loadPlugin(String name, Player player, Object config, MessageBus messageBus, Context context) {
         PKPlugin plugin = PlayKitManager.createPlugin(name);
         if (plugin != null) {
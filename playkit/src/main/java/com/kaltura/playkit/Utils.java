@@ -18,17 +18,13 @@ import android.support.annotation.NonNull;
 import android.util.Base64;
 
 import com.google.gson.JsonObject;
+import com.kaltura.playkit.player.PKHttpClientManager;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -142,52 +138,6 @@ public class Utils {
     }
 
     private static byte[] executeHttpRequest(boolean post, String url, byte[] data, Map<String, String> headers) throws IOException {
-
-        HttpURLConnection urlConnection = null;
-
-        try {
-            urlConnection = (HttpURLConnection) new URL(url).openConnection();
-            urlConnection.setRequestMethod(post ? "POST" : "GET");
-
-            if (data != null) {
-                urlConnection.setDoOutput(true);
-            }
-
-            urlConnection.setDoInput(true);
-            if (headers != null) {
-                for (Map.Entry<String, String> requestProperty : headers.entrySet()) {
-                    urlConnection.setRequestProperty(requestProperty.getKey(), requestProperty.getValue());
-                }
-            }
-
-            if (data != null) {
-                OutputStream out = new BufferedOutputStream(urlConnection.getOutputStream());
-                out.write(data);
-                out.close();
-            }
-
-            InputStream in = new BufferedInputStream(urlConnection.getInputStream());
-            return convertInputStreamToByteArray(in);
-
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-        }
-    }
-
-    private static byte[] convertInputStreamToByteArray(InputStream inputStream) throws IOException {
-        byte[] bytes;
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte data[] = new byte[READ_BUFFER_SIZE];
-        int count;
-        while ((count = inputStream.read(data)) != -1) {
-            bos.write(data, 0, count);
-        }
-        bos.flush();
-        bos.close();
-        inputStream.close();
-        bytes = bos.toByteArray();
-        return bytes;
+        return PKHttpClientManager.executeRequest(post, url, data, headers);
     }
 }
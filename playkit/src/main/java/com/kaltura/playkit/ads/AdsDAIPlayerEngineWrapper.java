@@ -164,6 +164,13 @@ public class AdsDAIPlayerEngineWrapper extends PlayerEngineWrapper implements PK
         super.stop();
     }
 
+    @Override
+    public boolean addToPlaylist(PKMediaSourceConfig mediaSourceConfig) {
+        // Ads are requested per entry, so queued entries are played with prepare().
+        log.d("addToPlaylist is not supported with ads");
+        return false;
+    }
+
     @Override
     public <T extends PKController> T getController(Class<T> type) {
         if (type == AdController.class && defaultDAIAdController != null) {
@@ -15,6 +15,7 @@ package com.kaltura.playkit.drm;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import com.google.android.exoplayer2.drm.DefaultDrmSessionEventListener;
 import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
@@ -56,12 +57,18 @@ public class DeferredDrmSessionManager implements DrmSessionManager<FrameworkMed
 
     public interface DrmSessionListener {
         void onError(PKError error);
+        // Times are SystemClock.elapsedRealtime(); called on the main thread.
+        default void onKeyRequestStarted(long realtimeMs) {}
+        default void onKeysLoaded(long realtimeMs) {}
     }
 
     public DeferredDrmSessionManager(Handler mainHandler, DrmCallback drmCallback, DrmSessionListener drmSessionListener) {
         this.mainHandler = mainHandler;
         this.drmCallback = drmCallback;
         this.drmSessionListener = drmSessionListener;
+        if (mainHandler != null) {
+            drmCallback.setKeyRequestListener(realtimeMs -> mainHandler.post(() -> drmSessionListener.onKeyRequestStarted(realtimeMs)));
+        }
     }
 
     public void setMediaSource(PKMediaSource mediaSource) {
@@ -175,6 +182,7 @@ public class DeferredDrmSessionManager implements DrmSessionManager<FrameworkMed
     @Override
     public void onDrmKeysLoaded() {
         log.d("onDrmKeysLoaded");
+        drmSessionListener.onKeysLoaded(SystemClock.elapsedRealtime());
     }
 
     @Override
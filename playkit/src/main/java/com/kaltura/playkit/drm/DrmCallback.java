@@ -1,6 +1,7 @@
 package com.kaltura.playkit.drm;
 
 import android.net.Uri;
+import android.os.SystemClock;
 
 import com.google.android.exoplayer2.drm.ExoMediaDrm;
 import com.google.android.exoplayer2.drm.HttpMediaDrmCallback;
@@ -20,6 +21,12 @@ public class DrmCallback implements MediaDrmCallback {
     private final HttpDataSource.Factory dataSourceFactory;
     private final PKRequestParams.Adapter adapter;
     private HttpMediaDrmCallback callback;
+    private KeyRequestListener keyRequestListener;
+
+    interface KeyRequestListener {
+        // Called on the DRM thread, with the SystemClock.elapsedRealtime() of the request.
+        void onKeyRequestStarted(long realtimeMs);
+    }
 
     @Override
     public byte[] executeProvisionRequest(UUID uuid, ExoMediaDrm.ProvisionRequest request) throws IOException {
@@ -28,6 +35,9 @@ public class DrmCallback implements MediaDrmCallback {
 
     @Override
     public byte[] executeKeyRequest(UUID uuid, ExoMediaDrm.KeyRequest request) throws Exception {
+        if (keyRequestListener != null) {
+            keyRequestListener.onKeyRequestStarted(SystemClock.elapsedRealtime());
+        }
         return callback.executeKeyRequest(uuid, request);
     }
 
@@ -36,6 +46,10 @@ public class DrmCallback implements MediaDrmCallback {
         this.adapter = adapter;
     }
 
+    void setKeyRequestListener(KeyRequestListener keyRequestListener) {
+        this.keyRequestListener = keyRequestListener;
+    }
+
     void setLicenseUrl(String licenseUrl) {
 
         if (licenseUrl == null) {
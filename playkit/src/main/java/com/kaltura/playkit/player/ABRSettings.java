@@ -24,6 +24,15 @@ public class ABRSettings {
      * @return - Player Settings.
      */
     private Long initialBitrateEstimate;
+    /**
+     * Sets the factory of the estimators that turn download samples into the bandwidth estimate of
+     * the adaptive track selection. Each player creates its own estimators. Null (default) uses
+     * ExoPlayer's estimate.
+     *
+     * @param bandwidthEstimatorFactory The factory, for example {@code EwmaBandwidthEstimator::new}.
+     * @return - Player Settings.
+     */
+    private BandwidthEstimator.Factory bandwidthEstimatorFactory;
 
     public ABRSettings setMinVideoBitrate(long minVideoBitrate) {
         this.minVideoBitrate = minVideoBitrate;
@@ -40,6 +49,11 @@ public class ABRSettings {
         return this;
     }
 
+    public ABRSettings setBandwidthEstimatorFactory(BandwidthEstimator.Factory bandwidthEstimatorFactory) {
+        this.bandwidthEstimatorFactory = bandwidthEstimatorFactory;
+        return this;
+    }
+
     public Long getMinVideoBitrate() {
         return minVideoBitrate;
     }
@@ -52,4 +66,8 @@ public class ABRSettings {
         return initialBitrateEstimate;
     }
 
+    public BandwidthEstimator.Factory getBandwidthEstimatorFactory() {
+        return bandwidthEstimatorFactory;
+    }
+
 }
@@ -0,0 +1,119 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.Nullable;
+
+import com.kaltura.playkit.LocalAssetsManager;
+import com.kaltura.playkit.LocalDataStore;
+import com.kaltura.playkit.PKLog;
+
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last bandwidth estimate of a session per network type (wifi, cellular, ethernet) and
+ * per media host, so that the next session starts from it instead of a fixed guess.
+ */
+class BandwidthEstimateStore {
+
+    private static final PKLog log = PKLog.get("BandwidthEstimateStore");
+
+    private static final String KEY_PREFIX = "bandwidthEstimate:";
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+    private static final int VALUE_SIZE = 16;   // Estimate and save time, both longs.
+
+    private final Context context;
+    private final LocalDataStore dataStore;
+
+    BandwidthEstimateStore(Context context) {
+        this.context = context.getApplicationContext();
+        this.dataStore = new LocalAssetsManager.DefaultLocalDataStore(this.context);
+    }
+
+    /**
+     * @return the estimate of the host on the current network, else of any host on this network type, else null.
+     */
+    @Nullable
+    Long load(@Nullable String host) {
+        final String networkType = getNetworkType();
+        if (networkType == null) {
+            return null;
+        }
+        Long estimate = host != null ? loadEstimate(buildKey(networkType, host)) : null;
+        if (estimate == null) {
+            estimate = loadEstimate(buildKey(networkType, null));
+        }
+        return estimate;
+    }
+
+    void save(@Nullable String host, long bitrateEstimate) {
+        final String networkType = getNetworkType();
+        if (networkType == null || bitrateEstimate <= 0) {
+            return;
+        }
+        final byte[] value = ByteBuffer.allocate(VALUE_SIZE).putLong(bitrateEstimate).putLong(System.currentTimeMillis()).array();
+        if (host != null) {
+            dataStore.save(buildKey(networkType, host), value);
+        }
+        dataStore.save(buildKey(networkType, null), value);
+    }
+
+    @Nullable
+    private Long loadEstimate(String key) {
+        final byte[] value;
+        try {
+            value = dataStore.load(key);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        if (value == null || value.length != VALUE_SIZE) {
+            return null;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(value);
+        final long estimate = buffer.getLong();
+        final long savedAt = buffer.getLong();
+        if (System.currentTimeMillis() - savedAt > MAX_AGE_MS) {
+            log.d("Ignoring old bandwidth estimate " + key);
+            return null;
+        }
+        return estimate;
+    }
+
+    private static String buildKey(String networkType, @Nullable String host) {
+        return KEY_PREFIX + networkType + (host != null ? ":" + host : "");
+    }
+
+    @Nullable
+    private String getNetworkType() {
+        final ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo networkInfo = connectivityManager != null ? connectivityManager.getActiveNetworkInfo() : null;
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return null;
+        }
+        switch (networkInfo.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+                return "wifi";
+            case ConnectivityManager.TYPE_MOBILE:
+                return "cellular";
+            case ConnectivityManager.TYPE_ETHERNET:
+                return "ethernet";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+/**
+ * Turns download samples into the bandwidth estimate that the adaptive track selection uses. Set
+ * with {@link ABRSettings#setBandwidthEstimatorFactory(Factory)}; without one, ExoPlayer's
+ * default estimate is used. Built-in estimators: {@link EwmaBandwidthEstimator},
+ * {@link PercentileBandwidthEstimator} and {@link HarmonicMeanBandwidthEstimator}.
+ * <p>
+ * The player synchronizes the calls, which come from different threads. An estimator keeps the
+ * history of one player and host, so the player creates a new one with the factory when it starts
+ * with a new host.
+ */
+public interface BandwidthEstimator {
+
+    long NO_ESTIMATE = -1;
+
+    interface Factory {
+        /**
+         * @return a new estimator, without history. For example {@code EwmaBandwidthEstimator::new}.
+         */
+        BandwidthEstimator create();
+    }
+
+    /**
+     * Called when a download has finished.
+     *
+     * @param bytes     - bytes that were downloaded.
+     * @param elapsedMs - time that the download took, more than 0.
+     */
+    void addSample(long bytes, long elapsedMs);
+
+    /**
+     * @return the estimated bandwidth in bits per second, or {@link #NO_ESTIMATE} to use the default estimate.
+     */
+    long getBitrateEstimate();
+}
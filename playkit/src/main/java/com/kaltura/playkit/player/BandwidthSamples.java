@@ -0,0 +1,131 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+/**
+ * The last throughput samples, in a fixed-size ring of primitive arrays, with percentile and mean
+ * calculations that don't allocate. Not thread safe.
+ */
+public class BandwidthSamples {
+
+    private final long[] bitrates;
+    private final long[] weights;
+    private int size;
+    private int next;
+
+    // Scratch arrays for the sorted samples.
+    private final long[] sortedBitrates;
+    private final long[] sortedWeights;
+
+    /**
+     * @param capacity - number of samples to keep.
+     */
+    public BandwidthSamples(int capacity) {
+        bitrates = new long[capacity];
+        weights = new long[capacity];
+        sortedBitrates = new long[capacity];
+        sortedWeights = new long[capacity];
+    }
+
+    /**
+     * Add a sample, replacing the oldest one if the ring is full.
+     *
+     * @param bitrate - throughput of the sample in bits per second.
+     * @param weight  - weight of the sample in the weighted percentile, for example the bytes downloaded.
+     */
+    public void add(long bitrate, long weight) {
+        bitrates[next] = bitrate;
+        weights[next] = weight;
+        next = (next + 1) % bitrates.length;
+        if (size < bitrates.length) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        next = 0;
+    }
+
+    /**
+     * @param percentile - between 0 and 1.
+     * @return the sample bitrate at the percentile, or {@link BandwidthEstimator#NO_ESTIMATE} if there are no samples.
+     */
+    public long getPercentile(float percentile) {
+        if (size == 0) {
+            return BandwidthEstimator.NO_ESTIMATE;
+        }
+        sort();
+        final int index = Math.min(size - 1, Math.max(0, (int) Math.ceil(percentile * size) - 1));
+        return sortedBitrates[index];
+    }
+
+    /**
+     * @param percentile - between 0 and 1.
+     * @return the sample bitrate at the percentile of the total weight, or {@link BandwidthEstimator#NO_ESTIMATE} if there are no samples.
+     */
+    public long getWeightedPercentile(float percentile) {
+        if (size == 0) {
+            return BandwidthEstimator.NO_ESTIMATE;
+        }
+        sort();
+        long totalWeight = 0;
+        for (int i = 0; i < size; i++) {
+            totalWeight += sortedWeights[i];
+        }
+        final double targetWeight = percentile * totalWeight;
+        long accumulatedWeight = 0;
+        for (int i = 0; i < size; i++) {
+            accumulatedWeight += sortedWeights[i];
+            if (accumulatedWeight >= targetWeight) {
+                return sortedBitrates[i];
+            }
+        }
+        return sortedBitrates[size - 1];
+    }
+
+    /**
+     * @return the harmonic mean of the sample bitrates, or {@link BandwidthEstimator#NO_ESTIMATE} if there are no samples.
+     */
+    public long getHarmonicMean() {
+        double inverseSum = 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (bitrates[i] > 0) {
+                inverseSum += 1.0 / bitrates[i];
+                count++;
+            }
+        }
+        return count > 0 ? (long) (count / inverseSum) : BandwidthEstimator.NO_ESTIMATE;
+    }
+
+    // Insertion sort of the samples by bitrate; the ring is small.
+    private void sort() {
+        for (int i = 0; i < size; i++) {
+            final long bitrate = bitrates[i];
+            final long weight = weights[i];
+            int j = i - 1;
+            while (j >= 0 && sortedBitrates[j] > bitrate) {
+                sortedBitrates[j + 1] = sortedBitrates[j];
+                sortedWeights[j + 1] = sortedWeights[j];
+                j--;
+            }
+            sortedBitrates[j + 1] = bitrate;
+            sortedWeights[j + 1] = weight;
+        }
+    }
+}
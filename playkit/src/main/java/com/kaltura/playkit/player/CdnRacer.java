@@ -0,0 +1,252 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.kaltura.playkit.PKLog;
+import com.kaltura.playkit.PKMediaSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Probes the URLs of equivalent sources, like the same stream on several CDNs, in parallel and
+ * ranks them by the time to the response headers. Each probe is a GET of the first KB of the
+ * manifest; HEAD is not used because some CDNs don't serve it for manifests. See {@link MultiCdnSettings}.
+ */
+class CdnRacer {
+
+    private static final PKLog log = PKLog.get("CdnRacer");
+
+    private static final String PROBE_RANGE = "bytes=0-1023";
+    // Probes that are slower than the race timeout may still finish, for the ranking, until this multiple of it.
+    private static final int PROBE_TIMEOUT_FACTOR = 3;
+
+    private static final long PENDING = -1;
+    private static final long FAILED = -2;
+
+    interface Listener {
+        /**
+         * Called once, on the main thread, with the first source that responded, or with null if
+         * none responded before the timeout.
+         */
+        void onRaceFinished(@Nullable PKMediaSource winner);
+    }
+
+    private final List<PKMediaSource> candidates;
+    private final OkHttpClient client;
+    private final long timeoutMs;
+    private final long[] latencies;
+    private final List<Call> calls = new ArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable timeoutAction = () -> finish(null);
+
+    @Nullable private Listener listener;
+    private boolean isFinished;
+
+    CdnRacer(@NonNull List<PKMediaSource> candidates, @NonNull OkHttpClient client, long timeoutMs) {
+        this.candidates = new ArrayList<>(candidates);
+        this.client = client.newBuilder().callTimeout(timeoutMs * PROBE_TIMEOUT_FACTOR, TimeUnit.MILLISECONDS).build();
+        this.timeoutMs = timeoutMs;
+        this.latencies = new long[candidates.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = PENDING;
+        }
+    }
+
+    // Must be called on the main thread.
+    void start(@NonNull Listener listener) {
+        this.listener = listener;
+        mainHandler.postDelayed(timeoutAction, timeoutMs);
+
+        for (int i = 0; i < candidates.size(); i++) {
+            final int index = i;
+            final Request request;
+            try {
+                request = new Request.Builder().url(candidates.get(i).getUrl()).header("Range", PROBE_RANGE).build();
+            } catch (IllegalArgumentException | NullPointerException e) {
+                onProbeResult(index, FAILED, "invalid URL");
+                continue;
+            }
+
+            final long startTime = SystemClock.elapsedRealtime();
+            final Call call = client.newCall(request);
+            synchronized (this) {
+                calls.add(call);
+            }
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    onProbeResult(index, FAILED, e.toString());
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    final long latency = SystemClock.elapsedRealtime() - startTime;
+                    final boolean isSuccessful = response.isSuccessful();
+                    final int code = response.code();
+                    response.close();
+                    onProbeResult(index, isSuccessful ? latency : FAILED, isSuccessful ? null : "HTTP " + code);
+                }
+            });
+        }
+    }
+
+    private void onProbeResult(int index, long latency, @Nullable String failure) {
+        final boolean isFirstSuccess;
+        final boolean allFailed;
+        synchronized (this) {
+            isFirstSuccess = latency >= 0 && getSuccessCount() == 0;
+            latencies[index] = latency;
+            allFailed = getSuccessCount() == 0 && !hasPendingProbes();
+        }
+
+        if (failure != null) {
+            log.d("Probe of " + candidates.get(index).getUrl() + " failed: " + failure);
+        }
+        if (isFirstSuccess) {
+            mainHandler.post(() -> finish(candidates.get(index)));
+        } else if (allFailed) {
+            mainHandler.post(() -> finish(null));
+        }
+    }
+
+    private void finish(@Nullable PKMediaSource winner) {
+        if (isFinished) {
+            return;
+        }
+        isFinished = true;
+        mainHandler.removeCallbacks(timeoutAction);
+        log.d("Race finished: " + this);
+        if (listener != null) {
+            listener.onRaceFinished(winner);
+        }
+    }
+
+    // Must be called on the main thread.
+    boolean isFinished() {
+        return isFinished;
+    }
+
+    /**
+     * Stop the probes and drop the listener; the ranking keeps the results so far.
+     */
+    void cancel() {
+        isFinished = true;
+        listener = null;
+        mainHandler.removeCallbacks(timeoutAction);
+        synchronized (this) {
+            for (Call call : calls) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * @return the sources that responded, fastest first, then the ones that are still pending and
+     * the ones that failed, each in their original order.
+     */
+    @NonNull
+    synchronized List<PKMediaSource> getRanking() {
+        final List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            indices.add(i);
+        }
+        Collections.sort(indices, (i1, i2) -> {
+            final long l1 = latencies[i1];
+            final long l2 = latencies[i2];
+            if (l1 >= 0 && l2 >= 0) {
+                return Long.compare(l1, l2);
+            }
+            if (l1 != l2) {
+                // Successes (>= 0) before PENDING before FAILED.
+                return Long.compare(l2, l1);
+            }
+            return i1 - i2;
+        });
+
+        final List<PKMediaSource> ranking = new ArrayList<>();
+        for (int index : indices) {
+            ranking.add(candidates.get(index));
+        }
+        return ranking;
+    }
+
+    /**
+     * @return the best ranked source that is not excluded, or null if there is none.
+     */
+    @Nullable
+    PKMediaSource getNextSource(@NonNull Set<PKMediaSource> excluded) {
+        for (PKMediaSource source : getRanking()) {
+            if (!excluded.contains(source)) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    private int getSuccessCount() {
+        int count = 0;
+        for (long latency : latencies) {
+            if (latency >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // True until every probe responded, failed or timed out.
+    synchronized boolean hasPendingProbes() {
+        for (long latency : latencies) {
+            if (latency == PENDING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < candidates.size(); i++) {
+            final PKMediaSource source = candidates.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(source.getId() != null ? source.getId() : source.getUrl()).append(": ");
+            if (latencies[i] == PENDING) {
+                sb.append("pending");
+            } else if (latencies[i] == FAILED) {
+                sb.append("failed");
+            } else {
+                sb.append(latencies[i]).append("ms");
+            }
+        }
+        return sb.toString();
+    }
+}
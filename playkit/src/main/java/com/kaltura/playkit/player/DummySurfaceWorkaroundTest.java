@@ -5,6 +5,8 @@ import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 
 import com.google.android.exoplayer2.DefaultRenderersFactory;
@@ -38,9 +40,12 @@ public class DummySurfaceWorkaroundTest {
     private static final String TAG = "DummySurfaceTest";
 
     private static final String PREFS_ENTRY_FINGERPRINT = "Build.FINGERPRINT.DummySurface";
+    // The result of the test is saved until the OS updates.
+    private static final String PREFS_ENTRY_RESULT_FINGERPRINT = "Build.FINGERPRINT.DummySurfaceResult";
+    private static final String PREFS_ENTRY_WORKAROUND_REQUIRED = "DummySurface.workaroundRequired";
     private static final String URL = "asset:///DRMTest/index.mpd";
 
-    public static boolean workaroundRequired;
+    public static volatile boolean workaroundRequired;
     private static boolean reportSent;
 
     private static MediaDrmCallback fakeDrmCallback = new MediaDrmCallback() {
@@ -56,17 +61,31 @@ public class DummySurfaceWorkaroundTest {
         }
     };
 
+    // Called on a background thread. The test player runs on its own thread, so the caller doesn't wait for it.
     static void executeTest(final Context context) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
             return;
         }
 
+        final SharedPreferences sharedPrefs = context.getSharedPreferences(PKDeviceCapabilities.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        if (Build.FINGERPRINT.equals(sharedPrefs.getString(PREFS_ENTRY_RESULT_FINGERPRINT, null))) {
+            workaroundRequired = sharedPrefs.getBoolean(PREFS_ENTRY_WORKAROUND_REQUIRED, false);
+            return;
+        }
+
+        final HandlerThread testThread = new HandlerThread("DummySurfaceTest");
+        testThread.start();
+        new Handler(testThread.getLooper()).post(() -> runTest(context, sharedPrefs, testThread));
+    }
+
+    private static void runTest(final Context context, final SharedPreferences sharedPrefs, final HandlerThread testThread) {
         DataSource.Factory mediaDataSourceFactory = new DefaultDataSourceFactory(context, "whatever");
         DefaultTrackSelector trackSelector = new DefaultTrackSelector(new AdaptiveTrackSelection.Factory());
 
         DefaultDrmSessionManager<FrameworkMediaCrypto> drmSessionManager = getDrmSessionManager();
 
         if (drmSessionManager == null) {
+            testThread.quit();
             return;
         }
 
@@ -78,8 +97,10 @@ public class DummySurfaceWorkaroundTest {
             public void onPlayerError(ExoPlaybackException error) {
                 if (error.getCause() instanceof MediaCodecRenderer.DecoderInitializationException) {
                     workaroundRequired(context, true);
+                    saveResult(sharedPrefs);
                 }
                 player.release();
+                testThread.quit();
             }
 
             @Override
@@ -88,7 +109,9 @@ public class DummySurfaceWorkaroundTest {
                     // If we receive player state ready, we can assume that no workaround required.
                     // So set the workaroundRequired flag to false.
                     workaroundRequired(context, false);
+                    saveResult(sharedPrefs);
                     player.release();
+                    testThread.quit();
                 }
             }
         });
@@ -101,6 +124,13 @@ public class DummySurfaceWorkaroundTest {
         player.prepare(mediaSource);
     }
 
+    private static void saveResult(SharedPreferences sharedPrefs) {
+        sharedPrefs.edit()
+                .putString(PREFS_ENTRY_RESULT_FINGERPRINT, Build.FINGERPRINT)
+                .putBoolean(PREFS_ENTRY_WORKAROUND_REQUIRED, workaroundRequired)
+                .apply();
+    }
+
     private static void workaroundRequired(Context context, boolean b) {
         workaroundRequired = b;
         if (b) {
@@ -0,0 +1,78 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+/**
+ * Two exponentially weighted moving averages of the throughput, a fast one and a slow one, weighted
+ * by the download time of each sample. The estimate is the lower of the two, so it drops quickly
+ * when the network gets worse and rises slowly when it gets better.
+ */
+public class EwmaBandwidthEstimator implements BandwidthEstimator {
+
+    public static final double DEFAULT_FAST_HALF_LIFE_SEC = 2;
+    public static final double DEFAULT_SLOW_HALF_LIFE_SEC = 5;
+
+    private final Ewma fast;
+    private final Ewma slow;
+
+    public EwmaBandwidthEstimator() {
+        this(DEFAULT_FAST_HALF_LIFE_SEC, DEFAULT_SLOW_HALF_LIFE_SEC);
+    }
+
+    /**
+     * @param fastHalfLifeSec - download time after which a sample has half of its weight in the fast average.
+     * @param slowHalfLifeSec - download time after which a sample has half of its weight in the slow average.
+     */
+    public EwmaBandwidthEstimator(double fastHalfLifeSec, double slowHalfLifeSec) {
+        fast = new Ewma(fastHalfLifeSec);
+        slow = new Ewma(slowHalfLifeSec);
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+        final double bitrate = bytes * 8000.0 / elapsedMs;
+        final double elapsedSec = elapsedMs / 1000.0;
+        fast.add(elapsedSec, bitrate);
+        slow.add(elapsedSec, bitrate);
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+        if (fast.totalWeight == 0) {
+            return NO_ESTIMATE;
+        }
+        return (long) Math.min(fast.getEstimate(), slow.getEstimate());
+    }
+
+    private static class Ewma {
+        private final double alpha;
+        private double estimate;
+        private double totalWeight;
+
+        Ewma(double halfLifeSec) {
+            alpha = Math.exp(Math.log(0.5) / halfLifeSec);
+        }
+
+        void add(double weight, double value) {
+            final double adjustedAlpha = Math.pow(alpha, weight);
+            estimate = value * (1 - adjustedAlpha) + adjustedAlpha * estimate;
+            totalWeight += weight;
+        }
+
+        // Corrects the bias towards the initial 0 while there are few samples.
+        double getEstimate() {
+            final double zeroFactor = 1 - Math.pow(alpha, totalWeight);
+            return estimate / zeroFactor;
+        }
+    }
+}
@@ -1,20 +1,61 @@
 package com.kaltura.playkit.player;
 
+import android.view.Surface;
+
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.analytics.AnalyticsListener;
 import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.kaltura.playkit.PKStartupTimeline;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 class ExoAnalyticsAggregator implements AnalyticsListener {
 
     private long totalDroppedFrames;
     private long totalBytesLoaded;
+    private final EnumSet<PKStartupTimeline.Phase> reportedStartupPhases = EnumSet.noneOf(PKStartupTimeline.Phase.class);
 
     private PlayerEngine.AnalyticsListener listener;
 
     void reset() {
         totalDroppedFrames = 0;
         totalBytesLoaded = 0;
+        resetStartupPhases();
+    }
+
+    void resetStartupPhases() {
+        reportedStartupPhases.clear();
+    }
+
+    // Reports only the first occurrence of each phase since the last reset.
+    void onStartupPhase(PKStartupTimeline.Phase phase, long realtimeMs) {
+        if (reportedStartupPhases.add(phase) && listener != null) {
+            listener.onStartupPhase(phase, realtimeMs);
+        }
+    }
+
+    @Override
+    public void onLoadStarted(EventTime eventTime, MediaSourceEventListener.LoadEventInfo loadEventInfo, MediaSourceEventListener.MediaLoadData mediaLoadData) {
+        if (mediaLoadData.dataType == C.DATA_TYPE_MANIFEST) {
+            onStartupPhase(PKStartupTimeline.Phase.MANIFEST_LOAD_STARTED, eventTime.realtimeMs);
+        } else if (mediaLoadData.dataType == C.DATA_TYPE_MEDIA) {
+            onStartupPhase(PKStartupTimeline.Phase.FIRST_SEGMENT_LOAD_STARTED, eventTime.realtimeMs);
+        }
+    }
+
+    @Override
+    public void onDecoderInitialized(EventTime eventTime, int trackType, String decoderName, long initializationDurationMs) {
+        if (trackType == C.TRACK_TYPE_VIDEO) {
+            onStartupPhase(PKStartupTimeline.Phase.VIDEO_DECODER_INITIALIZED, eventTime.realtimeMs);
+        } else if (trackType == C.TRACK_TYPE_AUDIO) {
+            onStartupPhase(PKStartupTimeline.Phase.AUDIO_DECODER_INITIALIZED, eventTime.realtimeMs);
+        }
+    }
+
+    @Override
+    public void onRenderedFirstFrame(EventTime eventTime, Surface surface) {
+        onStartupPhase(PKStartupTimeline.Phase.FIRST_FRAME_RENDERED, eventTime.realtimeMs);
     }
 
     @Override
@@ -27,6 +68,15 @@ class ExoAnalyticsAggregator implements AnalyticsListener {
 
     @Override
     public void onLoadCompleted(EventTime eventTime, MediaSourceEventListener.LoadEventInfo loadEventInfo, MediaSourceEventListener.MediaLoadData mediaLoadData) {
+        if (mediaLoadData.dataType == C.DATA_TYPE_MANIFEST) {
+            onStartupPhase(PKStartupTimeline.Phase.MANIFEST_LOADED, eventTime.realtimeMs);
+        } else if (mediaLoadData.dataType == C.DATA_TYPE_MEDIA) {
+            onStartupPhase(PKStartupTimeline.Phase.FIRST_SEGMENT_LOADED, eventTime.realtimeMs);
+        }
+        addBytesLoaded(loadEventInfo);
+    }
+
+    private void addBytesLoaded(MediaSourceEventListener.LoadEventInfo loadEventInfo) {
         if (loadEventInfo.bytesLoaded > 0) {
             totalBytesLoaded += loadEventInfo.bytesLoaded;
 
@@ -38,12 +88,12 @@ class ExoAnalyticsAggregator implements AnalyticsListener {
 
     @Override
     public void onLoadCanceled(EventTime eventTime, MediaSourceEventListener.LoadEventInfo loadEventInfo, MediaSourceEventListener.MediaLoadData mediaLoadData) {
-        onLoadCompleted(eventTime, loadEventInfo, mediaLoadData);   // in case there are bytes loaded
+        addBytesLoaded(loadEventInfo);   // in case there are bytes loaded
     }
 
     @Override
     public void onLoadError(EventTime eventTime, MediaSourceEventListener.LoadEventInfo loadEventInfo, MediaSourceEventListener.MediaLoadData mediaLoadData, IOException error, boolean wasCanceled) {
-        onLoadCompleted(eventTime, loadEventInfo, mediaLoadData);   // in case there are bytes loaded
+        addBytesLoaded(loadEventInfo);   // in case there are bytes loaded
         if (listener != null) {
             listener.onLoadError(error, wasCanceled);
         }
@@ -20,9 +20,12 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.ViewGroup;
 
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayerFactory;
 import com.google.android.exoplayer2.ExoPlayerLibraryInfo;
@@ -35,6 +38,7 @@ import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.metadata.MetadataOutput;
 import com.google.android.exoplayer2.source.BehindLiveWindowException;
+import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MergingMediaSource;
@@ -58,6 +62,8 @@ import com.kaltura.playkit.PKError;
 import com.kaltura.playkit.PKLog;
 import com.kaltura.playkit.PKMediaEntry;
 import com.kaltura.playkit.PKMediaFormat;
+import com.kaltura.playkit.PKRequestParams;
+import com.kaltura.playkit.PKStartupTimeline;
 import com.kaltura.playkit.PlayKitManager;
 import com.kaltura.playkit.PlaybackInfo;
 import com.kaltura.playkit.PlayerEvent;
@@ -73,9 +79,8 @@ import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
-import okhttp3.OkHttpClient;
+import okhttp3.Call;
 
 import static com.kaltura.playkit.utils.Consts.DEFAULT_PITCH_RATE;
 import static com.kaltura.playkit.utils.Consts.TIME_UNSET;
@@ -86,6 +91,7 @@ import static com.kaltura.playkit.utils.Consts.TRACK_TYPE_TEXT;
 public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, MetadataOutput, BandwidthMeter.EventListener {
 
     private static final PKLog log = PKLog.get("ExoPlayerWrapper");
+    private static final int MIN_BANDWIDTH_SAMPLES_TO_SAVE = 5;
     private static final CookieManager DEFAULT_COOKIE_MANAGER;
 
     static {
@@ -93,7 +99,11 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         DEFAULT_COOKIE_MANAGER.setCookiePolicy(CookiePolicy.ACCEPT_ORIGINAL_SERVER);
     }
 
-    private DefaultBandwidthMeter bandwidthMeter;
+    private PKBandwidthMeter bandwidthMeter;
+    private BandwidthEstimateStore bandwidthEstimateStore;
+    private int bandwidthSampleCount;
+    // The host that the meter's initial estimate and history belong to.
+    @Nullable private String bandwidthMeterHost;
     @NonNull private PlayerSettings playerSettings;
     private EventListener eventListener;
     private StateChangedListener stateChangedListener;
@@ -125,7 +135,7 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
     private boolean preferredLanguageWasSelected;
     private boolean shouldRestorePlayerToPreviousState;
 
-    private int playerWindow;
+    // Position in the current playlist item.
     private long playerPosition = TIME_UNSET;
 
     private float lastKnownVolume = Consts.DEFAULT_VOLUME;
@@ -139,9 +149,16 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
     private DeferredDrmSessionManager.DrmSessionListener drmSessionListener = initDrmSessionListener();
 
     private PKMediaSourceConfig sourceConfig;
+    // Gapless playlist: the loaded source and the queued ones, one window each.
+    private ConcatenatingMediaSource playlistSource;
+    private List<PKMediaSourceConfig> playlistConfigs = new ArrayList<>();
+    private int playlistIndex;
+    private PlaylistListener playlistListener;
     @NonNull private Profiler profiler = Profiler.NOOP;
 
     private DataSource.Factory dataSourceFactory;
+    private DataSource.Factory cacheDataSourceFactory;
+    private MediaCacheSettings cacheDataSourceSettings;
     private HttpDataSource.Factory httpDataSourceFactory;
     private Timeline.Period period;
 
@@ -154,31 +171,69 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
 
         playerSettings = settings != null ? settings : new PlayerSettings();
         rootView = rootPlayerView;
+        bandwidthEstimateStore = new BandwidthEstimateStore(context);
+        bandwidthMeter = buildBandwidthMeter(null);
+        period = new Timeline.Period();
+        this.exoPlayerView = exoPlayerView;
+        if (CookieHandler.getDefault() != DEFAULT_COOKIE_MANAGER) {
+            CookieHandler.setDefault(DEFAULT_COOKIE_MANAGER);
+        }
+    }
+
+    private PKBandwidthMeter buildBandwidthMeter(@Nullable String host) {
+        bandwidthMeterHost = host;
+        bandwidthSampleCount = 0;
+        return new PKBandwidthMeter(buildDefaultBandwidthMeter(host), newBandwidthEstimator());
+    }
+
+    // The ExoPlayer instance keeps its meter, so an existing engine starts the meter over instead.
+    private void resetBandwidthMeter(@Nullable String host) {
+        bandwidthMeterHost = host;
+        bandwidthSampleCount = 0;
+        bandwidthMeter.reset(buildDefaultBandwidthMeter(host), newBandwidthEstimator());
+    }
+
+    @Nullable
+    private BandwidthEstimator newBandwidthEstimator() {
+        final BandwidthEstimator.Factory factory = playerSettings.getAbrSettings().getBandwidthEstimatorFactory();
+        return factory != null ? factory.create() : null;
+    }
+
+    // The initial estimate is the app's, else the last one saved for this network and host.
+    private DefaultBandwidthMeter buildDefaultBandwidthMeter(@Nullable String host) {
         DefaultBandwidthMeter.Builder bandwidthMeterBuilder = new DefaultBandwidthMeter.Builder(context).setEventListener(mainHandler, this);
 
         Long initialBitrateEstimate = playerSettings.getAbrSettings().getInitialBitrateEstimate();
+        if (initialBitrateEstimate == null) {
+            initialBitrateEstimate = bandwidthEstimateStore.load(host);
+        }
 
         if (initialBitrateEstimate != null && initialBitrateEstimate > 0) {
             bandwidthMeterBuilder.setInitialBitrateEstimate(initialBitrateEstimate);
         }
 
-        bandwidthMeter = bandwidthMeterBuilder.build();
-        period = new Timeline.Period();
-        this.exoPlayerView = exoPlayerView;
-        if (CookieHandler.getDefault() != DEFAULT_COOKIE_MANAGER) {
-            CookieHandler.setDefault(DEFAULT_COOKIE_MANAGER);
+        return bandwidthMeterBuilder.build();
+    }
+
+    private void saveBandwidthEstimate() {
+        // Before enough samples, the meter still reports its initial estimate.
+        if (bandwidthSampleCount < MIN_BANDWIDTH_SAMPLES_TO_SAVE || sourceConfig == null) {
+            return;
         }
+        bandwidthEstimateStore.save(sourceConfig.getUrl().getHost(), bandwidthMeter.getBitrateEstimate());
     }
 
     @Override
     public void onBandwidthSample(int elapsedMs, long bytes, long bitrate) {
+        bandwidthSampleCount++;
+        bandwidthMeter.onBandwidthSample(elapsedMs, bytes);
         sendEvent(PlayerEvent.Type.PLAYBACK_INFO_UPDATED);
     }
 
     private void initializePlayer() {
         DefaultTrackSelector trackSelector = initializeTrackSelector();
 
-        final DrmCallback drmCallback = new DrmCallback(getHttpDataSourceFactory(), playerSettings.getLicenseRequestAdapter());
+        final DrmCallback drmCallback = new DrmCallback(getHttpDataSourceFactory(), initLicenseRequestAdapter());
         drmSessionManager = new DeferredDrmSessionManager(mainHandler, drmCallback, drmSessionListener);
         CustomRendererFactory renderersFactory = new CustomRendererFactory(context, playerSettings.allowClearLead(), playerSettings.getLoadControlBuffers().getAllowedVideoJoiningTimeMs());
       
@@ -192,17 +247,25 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
     }
 
     @NonNull
-    private DefaultLoadControl getUpdatedLoadControl() {
+    private LoadControl getUpdatedLoadControl() {
         final LoadControlBuffers loadControl = playerSettings.getLoadControlBuffers();
         int backBufferDurationMs = loadControl.getBackBufferDurationMs();
         boolean retainBackBufferFromKeyframe = loadControl.getRetainBackBufferFromKeyframe();
-        return new DefaultLoadControl.Builder().
+        DefaultLoadControl.Builder builder = new DefaultLoadControl.Builder().
                 setBufferDurationsMs(
                         loadControl.getMinPlayerBufferMs(),
                         loadControl.getMaxPlayerBufferMs(),
                         loadControl.getMinBufferAfterInteractionMs(),
                         loadControl.getMinBufferAfterReBufferMs()).
-                setBackBuffer(backBufferDurationMs, retainBackBufferFromKeyframe).createDefaultLoadControl();
+                setBackBuffer(backBufferDurationMs, retainBackBufferFromKeyframe);
+
+        if (loadControl.isMemoryAwareBuffering()) {
+            return new MemoryAwareLoadControl(context, builder.createDefaultLoadControl(), loadControl);
+        }
+        if (loadControl.getMaxPlayerBufferBytes() != C.LENGTH_UNSET) {
+            builder.setTargetBufferBytes(loadControl.getMaxPlayerBufferBytes()).setPrioritizeTimeOverSizeThresholds(false);
+        }
+        return builder.createDefaultLoadControl();
     }
 
     private void setPlayerListeners() {
@@ -236,6 +299,7 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         this.sourceConfig = sourceConfig;
         //reset metadata on prepare.
         metadataList.clear();
+        analyticsAggregator.resetStartupPhases();
 
         if (sourceConfig.mediaSource.hasDrmParams()) {
             drmSessionManager.setMediaSource(sourceConfig.mediaSource);
@@ -244,8 +308,12 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         shouldGetTracksInfo = true;
         trackSelectionHelper.applyPlayerSettings(playerSettings);
 
-        MediaSource mediaSource = buildExoMediaSource(sourceConfig);
+        MediaSource mediaSource = newPlaylistSource(sourceConfig);
         profiler.onPrepareStarted(sourceConfig);
+        if (!shouldResetPlayerPosition && player.getCurrentWindowIndex() > 0) {
+            // The new playlist has only this source: keep the position, but in its only item.
+            player.seekTo(0, player.getCurrentPosition());
+        }
         player.prepare(mediaSource, shouldResetPlayerPosition, shouldResetPlayerPosition);
         boolean haveStartPosition = player.getCurrentWindowIndex() != C.INDEX_UNSET;
         player.prepare(mediaSource, !haveStartPosition, shouldResetPlayerPosition);
@@ -274,7 +342,7 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
 
         Uri uri = sourceConfig.getUrl();
 
-        final DataSource.Factory dataSourceFactory = getDataSourceFactory();
+        final DataSource.Factory dataSourceFactory = getMediaDataSourceFactory(sourceConfig);
 
         switch (format) {
             case dash:
@@ -301,6 +369,42 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         }
     }
 
+    // Starts a new playlist with the source as its only item.
+    private MediaSource newPlaylistSource(PKMediaSourceConfig sourceConfig) {
+        playlistSource = new ConcatenatingMediaSource(buildExoMediaSource(sourceConfig));
+        playlistConfigs.clear();
+        playlistConfigs.add(sourceConfig);
+        playlistIndex = 0;
+        return playlistSource;
+    }
+
+    @Override
+    public boolean addToPlaylist(PKMediaSourceConfig mediaSourceConfig) {
+        if (player == null || playlistSource == null || sourceConfig == null) {
+            log.w("addToPlaylist: nothing is loaded");
+            return false;
+        }
+        // Live windows don't end, and the DRM session manager only serves the loaded source.
+        if (!isCacheable(sourceConfig) || !isCacheable(mediaSourceConfig) ||
+                sourceConfig.mediaSource.hasDrmParams() || mediaSourceConfig.mediaSource.hasDrmParams()) {
+            log.d("addToPlaylist: live and DRM sources are not queued");
+            return false;
+        }
+        final MediaSource mediaSource = buildExoMediaSource(mediaSourceConfig);
+        if (mediaSource == null) {
+            return false;
+        }
+
+        playlistSource.addMediaSource(mediaSource);
+        playlistConfigs.add(mediaSourceConfig);
+        return true;
+    }
+
+    @Override
+    public void setPlaylistListener(PlaylistListener playlistListener) {
+        this.playlistListener = playlistListener;
+    }
+
     /**
      * Return the media source with external subtitles if exists
      * @param externalSubtitleList External subtitle List
@@ -348,33 +452,27 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
     private HttpDataSource.Factory getHttpDataSourceFactory() {
         
         if (httpDataSourceFactory == null) {
-            final String userAgent = getUserAgent(context);
-            final boolean crossProtocolRedirectEnabled = playerSettings.crossProtocolRedirectEnabled();
+            httpDataSourceFactory = createHttpDataSourceFactory(context, playerSettings, profiler.getOkListenerFactory());
+        }
 
-            if (PKHttpClientManager.useOkHttp()) {
+        return httpDataSourceFactory;
+    }
 
-                final OkHttpClient.Builder builder = PKHttpClientManager.newClientBuilder()
-                        .followRedirects(true)
-                        .followSslRedirects(crossProtocolRedirectEnabled)
-                        .connectTimeout(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
-                        .readTimeout(DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    static HttpDataSource.Factory createHttpDataSourceFactory(Context context, PlayerSettings playerSettings, @Nullable okhttp3.EventListener.Factory okListenerFactory) {
+        final String userAgent = getUserAgent(context);
+        final boolean crossProtocolRedirectEnabled = playerSettings.crossProtocolRedirectEnabled();
 
-                final okhttp3.EventListener.Factory okListenerFactory = profiler.getOkListenerFactory();
-                if (okListenerFactory != null) {
-                    builder.eventListenerFactory(okListenerFactory);
-                }
+        if (PKHttpClientManager.useOkHttp()) {
 
-                httpDataSourceFactory = new OkHttpDataSourceFactory(builder.build(), userAgent);
+            final Call.Factory callFactory = PKHttpClientManager.getPlayerCallFactory(crossProtocolRedirectEnabled, okListenerFactory, playerSettings.getHttp2Settings());
+            return new OkHttpDataSourceFactory(callFactory, userAgent);
 
-            } else {
+        } else {
 
-                httpDataSourceFactory = new DefaultHttpDataSourceFactory(userAgent,
-                        DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
-                        DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, crossProtocolRedirectEnabled);
-            }
+            return new DefaultHttpDataSourceFactory(userAgent,
+                    DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, crossProtocolRedirectEnabled);
         }
-
-        return httpDataSourceFactory;
     }
 
     private DataSource.Factory getDataSourceFactory() {
@@ -384,6 +482,25 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         return dataSourceFactory;
     }
 
+    // Media is read through the disk cache if it's enabled, except for live media.
+    private DataSource.Factory getMediaDataSourceFactory(PKMediaSourceConfig sourceConfig) {
+        final MediaCacheSettings cacheSettings = playerSettings.getMediaCacheSettings();
+        if (cacheSettings == null || !isCacheable(sourceConfig)) {
+            return getDataSourceFactory();
+        }
+
+        if (cacheDataSourceFactory == null || cacheDataSourceSettings != cacheSettings) {
+            cacheDataSourceFactory = PKMediaCache.get(cacheSettings).createDataSourceFactory(getDataSourceFactory());
+            cacheDataSourceSettings = cacheSettings;
+        }
+        return cacheDataSourceFactory;
+    }
+
+    static boolean isCacheable(PKMediaSourceConfig sourceConfig) {
+        return sourceConfig.mediaEntryType != PKMediaEntry.MediaEntryType.Live &&
+                sourceConfig.mediaEntryType != PKMediaEntry.MediaEntryType.DvrLive;
+    }
+
     private static String getUserAgent(Context context) {
         String applicationName;
         try {
@@ -522,7 +639,7 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         log.d("onPlayerError error type => " + error.type);
         if (isBehindLiveWindow(error) && sourceConfig != null) {
             log.d("onPlayerError BehindLiveWindowException received, re-preparing player");
-            player.prepare(buildExoMediaSource(sourceConfig), true, false);
+            player.prepare(newPlaylistSource(sourceConfig), true, false);
             return;
         }
 
@@ -561,6 +678,28 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
     @Override
     public void onPositionDiscontinuity(int reason) {
         log.d("onPositionDiscontinuity");
+        if (reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION && assertPlayerIsNotNull("onPositionDiscontinuity()")) {
+            final int windowIndex = player.getCurrentWindowIndex();
+            if (windowIndex != playlistIndex && windowIndex < playlistConfigs.size()) {
+                onPlaylistItemChanged(windowIndex);
+            }
+        }
+    }
+
+    // Playback moved to another playlist item, without a new prepare: report it as a new source.
+    private void onPlaylistItemChanged(int windowIndex) {
+        playlistIndex = windowIndex;
+        sourceConfig = playlistConfigs.get(windowIndex);
+        metadataList.clear();
+        shouldGetTracksInfo = true;
+
+        if (playlistListener != null) {
+            playlistListener.onPlaylistItemChanged(sourceConfig);
+        }
+        if (getDuration() != TIME_UNSET) {
+            sendEvent(PlayerEvent.Type.DURATION_CHANGE);
+            profiler.onDurationChanged(getDuration());
+        }
     }
 
     @Override
@@ -597,10 +736,16 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         if (player == null) {
             this.useTextureView = playerSettings.useTextureView();
             this.isSurfaceSecured = playerSettings.isSurfaceSecured();
+            bandwidthMeter = buildBandwidthMeter(mediaSourceConfig.getUrl().getHost());
             initializePlayer();
         } else {
             // for change media case need to verify if surface swap is needed
             maybeChangePlayerRenderView();
+            final String host = mediaSourceConfig.getUrl().getHost();
+            if (host == null ? bandwidthMeterHost != null : !host.equals(bandwidthMeterHost)) {
+                saveBandwidthEstimate();
+                resetBandwidthMeter(host);
+            }
         }
 
         preparePlayer(mediaSourceConfig);
@@ -784,7 +929,8 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         if (playerPosition == TIME_UNSET || isLiveMediaWithoutDvr()) {
             player.seekToDefaultPosition();
         } else {
-            player.seekTo(playerWindow, playerPosition);
+            // The restored player only has the current item, as the first window.
+            player.seekTo(0, playerPosition);
         }
     }
 
@@ -798,6 +944,7 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
     @Override
     public void destroy() {
         log.v("destroy");
+        saveBandwidthEstimate();
         closeProfilerSession();
         if (assertPlayerIsNotNull("destroy()")) {
             player.release();
@@ -940,7 +1087,10 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
                 trackSelectionHelper.getCurrentAudioBitrate(),
                 bandwidthMeter.getBitrateEstimate(),
                 trackSelectionHelper.getCurrentVideoWidth(),
-                trackSelectionHelper.getCurrentVideoHeight());
+                trackSelectionHelper.getCurrentVideoHeight(),
+                bandwidthMeter.getThroughputPercentile(0.1f),
+                bandwidthMeter.getThroughputPercentile(0.5f),
+                bandwidthMeter.getThroughputPercentile(0.9f));
     }
 
     @Override
@@ -951,6 +1101,7 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
     @Override
     public void stop() {
         log.v("stop");
+        saveBandwidthEstimate();
 
         shouldResetPlayerPosition = true;
         preferredLanguageWasSelected = false;
@@ -974,9 +1125,8 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         log.v("savePlayerPosition");
         if (assertPlayerIsNotNull("savePlayerPosition()")) {
             currentError = null;
-            playerWindow = player.getCurrentWindowIndex();
             Timeline timeline = player.getCurrentTimeline();
-            if (timeline != null && !timeline.isEmpty() && timeline.getWindow(playerWindow, window).isSeekable) {
+            if (timeline != null && !timeline.isEmpty() && timeline.getWindow(player.getCurrentWindowIndex(), window).isSeekable) {
                 playerPosition = player.getCurrentPosition();
             }
         }
@@ -1043,10 +1193,49 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         }
     }
 
+    // Reads the adapter from the current settings, which change when a pooled engine is handed to another player.
+    private PKRequestParams.Adapter initLicenseRequestAdapter() {
+        return new PKRequestParams.Adapter() {
+            @NonNull
+            @Override
+            public PKRequestParams adapt(PKRequestParams requestParams) {
+                final PKRequestParams.Adapter adapter = playerSettings.getLicenseRequestAdapter();
+                return adapter != null ? adapter.adapt(requestParams) : requestParams;
+            }
+
+            @Override
+            public void updateParams(com.kaltura.playkit.Player player) {
+                final PKRequestParams.Adapter adapter = playerSettings.getLicenseRequestAdapter();
+                if (adapter != null) {
+                    adapter.updateParams(player);
+                }
+            }
+
+            @Override
+            public String getApplicationName() {
+                final PKRequestParams.Adapter adapter = playerSettings.getLicenseRequestAdapter();
+                return adapter != null ? adapter.getApplicationName() : null;
+            }
+        };
+    }
+
     private DeferredDrmSessionManager.DrmSessionListener initDrmSessionListener() {
-        return error -> {
-            currentError = error;
-            sendEvent(PlayerEvent.Type.ERROR);
+        return new DeferredDrmSessionManager.DrmSessionListener() {
+            @Override
+            public void onError(PKError error) {
+                currentError = error;
+                sendEvent(PlayerEvent.Type.ERROR);
+            }
+
+            @Override
+            public void onKeyRequestStarted(long realtimeMs) {
+                analyticsAggregator.onStartupPhase(PKStartupTimeline.Phase.DRM_KEY_REQUESTED, realtimeMs);
+            }
+
+            @Override
+            public void onKeysLoaded(long realtimeMs) {
+                analyticsAggregator.onStartupPhase(PKStartupTimeline.Phase.DRM_KEYS_LOADED, realtimeMs);
+            }
         };
     }
 
@@ -1068,6 +1257,92 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
         profiler.onSessionFinished();
     }
 
+    private void removeProfilerAnalyticsListener() {
+        final com.google.android.exoplayer2.analytics.AnalyticsListener exoAnalyticsListener = profiler.getExoAnalyticsListener();
+        if (player != null && exoAnalyticsListener != null) {
+            player.removeAnalyticsListener(exoAnalyticsListener);
+        }
+    }
+
+    /**
+     * Create the player, renderers and view ahead of the first load. Used by {@link PlayerEnginePool}.
+     */
+    void prewarm() {
+        if (player == null) {
+            this.useTextureView = playerSettings.useTextureView();
+            this.isSurfaceSecured = playerSettings.isSurfaceSecured();
+            initializePlayer();
+        }
+    }
+
+    boolean isPrewarmed() {
+        return player != null && exoPlayerView != null;
+    }
+
+    /**
+     * Hand a pooled engine to a new player.
+     */
+    void rebind(@NonNull PlayerSettings settings, PlayerView rootPlayerView) {
+        playerSettings = settings;
+        rootView = rootPlayerView;
+        rootViewUpdated = false;
+        configureAspectRatioResizeMode();
+        // The next load sets the host; until then, nothing of the previous player is kept.
+        resetBandwidthMeter(null);
+    }
+
+    /**
+     * Clear everything that belongs to the previous player, keeping the ExoPlayer instance, its
+     * renderers and the view, so that the engine can be handed out again by {@link PlayerEnginePool}.
+     */
+    void recycle() {
+        log.v("recycle");
+        stop();
+
+        removeProfilerAnalyticsListener();
+        profiler = Profiler.NOOP;
+        eventListener = null;
+        stateChangedListener = null;
+        analyticsAggregator.setListener(null);
+        playlistListener = null;
+
+        sourceConfig = null;
+        playlistSource = null;
+        playlistConfigs.clear();
+        playlistIndex = 0;
+        metadataList.clear();
+        tracks = null;
+        currentError = null;
+        currentEvent = null;
+        currentState = PlayerState.IDLE;
+        previousState = null;
+        isSeeking = false;
+        shouldGetTracksInfo = false;
+        shouldResetPlayerPosition = false;
+        shouldRestorePlayerToPreviousState = false;
+        playerPosition = TIME_UNSET;
+
+        // Rebuilt with the next player's settings and profiler.
+        httpDataSourceFactory = null;
+        dataSourceFactory = null;
+        cacheDataSourceFactory = null;
+        cacheDataSourceSettings = null;
+
+        if (trackSelectionHelper != null) {
+            trackSelectionHelper.clearSelectionOverrides();
+        }
+        if (player != null) {
+            player.setVolume(Consts.DEFAULT_VOLUME);
+            player.setPlaybackParameters(PlaybackParameters.DEFAULT);
+        }
+
+        if (exoPlayerView != null && exoPlayerView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) exoPlayerView.getParent()).removeView(exoPlayerView);
+        }
+        rootView = null;
+        rootViewUpdated = false;
+    }
+
     public void setPlaybackRate(float rate) {
         log.v("setPlaybackRate");
         if (assertPlayerIsNotNull("setPlaybackRate()")) {
@@ -1104,6 +1379,14 @@ public class ExoPlayerWrapper implements PlayerEngine, Player.EventListener, Met
 
     public void setProfiler(Profiler profiler) {
         if (profiler != null) {
+            if (player != null && profiler != this.profiler) {
+                // A pooled player was created with a previous profiler.
+                removeProfilerAnalyticsListener();
+                final com.google.android.exoplayer2.analytics.AnalyticsListener exoAnalyticsListener = profiler.getExoAnalyticsListener();
+                if (exoAnalyticsListener != null) {
+                    player.addAnalyticsListener(exoAnalyticsListener);
+                }
+            }
             this.profiler = profiler;
             profiler.setPlayerEngine(this);
         }
@@ -0,0 +1,45 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+/**
+ * Harmonic mean of the throughput of the last samples. A single slow sample pulls the estimate down
+ * much more than a single fast one pushes it up.
+ */
+public class HarmonicMeanBandwidthEstimator implements BandwidthEstimator {
+
+    public static final int DEFAULT_WINDOW_SIZE = 5;
+
+    private final BandwidthSamples samples;
+
+    public HarmonicMeanBandwidthEstimator() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize - number of samples to keep.
+     */
+    public HarmonicMeanBandwidthEstimator(int windowSize) {
+        this.samples = new BandwidthSamples(windowSize);
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+        samples.add(bytes * 8000 / elapsedMs, bytes);
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+        return samples.getHarmonicMean();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Hosts that the player may fetch media from over HTTP/2, so that parallel audio, video and text
+ * requests are multiplexed on one connection. Requires the "okhttp" http provider and https URLs;
+ * HTTP/2 is negotiated with ALPN, so servers without it are still reached with HTTP/1.1. A request
+ * that fails on an HTTP/2 connection, like with a stream reset, is retried with HTTP/1.1, and its
+ * host stays on HTTP/1.1 for the rest of the process. If the failure happens while the body is read,
+ * the read fails and the player's retry goes over HTTP/1.1.
+ */
+public class Http2Settings {
+
+    private boolean enabledForAllHosts;
+    private final Set<String> hosts = new HashSet<>();
+
+    public boolean isEnabledForAllHosts() {
+        return enabledForAllHosts;
+    }
+
+    public Http2Settings setEnabledForAllHosts(boolean enabledForAllHosts) {
+        this.enabledForAllHosts = enabledForAllHosts;
+        return this;
+    }
+
+    @NonNull
+    public Set<String> getHosts() {
+        return Collections.unmodifiableSet(hosts);
+    }
+
+    /**
+     * @param host - host name, like "cdn.example.com", to use HTTP/2 with.
+     * @return these settings.
+     */
+    public Http2Settings addHost(@NonNull String host) {
+        hosts.add(host.toLowerCase(Locale.US));
+        return this;
+    }
+
+    boolean isEnabled() {
+        return enabledForAllHosts || !hosts.isEmpty();
+    }
+
+    boolean isEnabledFor(String host) {
+        return enabledForAllHosts || hosts.contains(host.toLowerCase(Locale.US));
+    }
+}
@@ -1,5 +1,7 @@
 package com.kaltura.playkit.player;
 
+import com.google.android.exoplayer2.C;
+
 import static com.google.android.exoplayer2.DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS;
 import static com.google.android.exoplayer2.DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
 import static com.google.android.exoplayer2.DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
@@ -17,6 +19,8 @@ public class LoadControlBuffers {
     private int backBufferDurationMs = DEFAULT_BACK_BUFFER_DURATION_MS;
     private boolean retainBackBufferFromKeyframe = DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
     private long allowedVideoJoiningTimeMs = DEFAULT_ALLOWED_VIDEO_JOINING_TIME_MS; //Maximum duration for which a video renderer can attempt to seamlessly join an ongoing playback. Default is 5000ms
+    private int maxPlayerBufferBytes = C.LENGTH_UNSET; //Maximum size of the buffered media. Default is unset - the player's default, that is sized for the selected tracks
+    private boolean memoryAwareBuffering; //Cap the buffered media by the app's memory class, and shrink the cap when the system is low on memory
 
     public int getMinPlayerBufferMs() {
         return minPlayerBufferMs;
@@ -89,4 +93,40 @@ public class LoadControlBuffers {
         this.allowedVideoJoiningTimeMs = allowedVideoJoiningTimeMs;
         return this;
     }
+
+    public int getMaxPlayerBufferBytes() {
+        return maxPlayerBufferBytes;
+    }
+
+    /**
+     * Stop buffering when the buffered media reaches this size, even if it is shorter than the
+     * max buffer duration.
+     *
+     * @param maxPlayerBufferBytes - size in bytes, or {@link C#LENGTH_UNSET} for the player's default.
+     * @return - these buffers.
+     */
+    public LoadControlBuffers setMaxPlayerBufferBytes(int maxPlayerBufferBytes) {
+        this.maxPlayerBufferBytes = maxPlayerBufferBytes;
+        return this;
+    }
+
+    public boolean isMemoryAwareBuffering() {
+        return memoryAwareBuffering;
+    }
+
+    /**
+     * Cap the size of the buffered media by the memory that the app may use
+     * ({@link android.app.ActivityManager#getMemoryClass()}), and lower the cap while the system
+     * reports memory pressure with onTrimMemory(). Without memory pressure, the cap is raised to what
+     * the min buffer duration needs at the selected bitrates, within the app's memory; under pressure
+     * it isn't, so the buffer may hold less than the min buffer duration until the next media is
+     * prepared. {@link #setMaxPlayerBufferBytes(int)}, if set, is the upper limit.
+     *
+     * @param memoryAwareBuffering - true to enable. Default is false.
+     * @return - these buffers.
+     */
+    public LoadControlBuffers setMemoryAwareBuffering(boolean memoryAwareBuffering) {
+        this.memoryAwareBuffering = memoryAwareBuffering;
+        return this;
+    }
 }
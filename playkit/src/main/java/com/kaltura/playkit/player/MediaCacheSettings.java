@@ -0,0 +1,60 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * Settings of the on-disk media cache, see {@link PKMediaCache}.
+ */
+public class MediaCacheSettings {
+
+    public static final long DEFAULT_MAX_MEDIA_CACHE_BYTES = 256 * 1024 * 1024;
+    public static final long DEFAULT_MAX_METADATA_CACHE_BYTES = 16 * 1024 * 1024;
+
+    private final File cacheDirectory;
+    private long maxMediaCacheBytes = DEFAULT_MAX_MEDIA_CACHE_BYTES; // LRU budget of media segments
+    private long maxMetadataCacheBytes = DEFAULT_MAX_METADATA_CACHE_BYTES; // LRU budget of manifests and init segments
+
+    /**
+     * @param cacheDirectory - directory that is only used by the cache, for example under {@code context.getCacheDir()}.
+     */
+    public MediaCacheSettings(@NonNull File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @NonNull
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getMaxMediaCacheBytes() {
+        return maxMediaCacheBytes;
+    }
+
+    public MediaCacheSettings setMaxMediaCacheBytes(long maxMediaCacheBytes) {
+        this.maxMediaCacheBytes = maxMediaCacheBytes;
+        return this;
+    }
+
+    public long getMaxMetadataCacheBytes() {
+        return maxMetadataCacheBytes;
+    }
+
+    public MediaCacheSettings setMaxMetadataCacheBytes(long maxMetadataCacheBytes) {
+        this.maxMetadataCacheBytes = maxMetadataCacheBytes;
+        return this;
+    }
+}
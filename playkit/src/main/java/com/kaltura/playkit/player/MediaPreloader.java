@@ -0,0 +1,267 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
+import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceInputStream;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.util.UriUtil;
+import com.kaltura.playkit.PKLog;
+import com.kaltura.playkit.PKMediaFormat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the beginning of an upcoming entry into the {@link PKMediaCache}: the manifest, the
+ * initialization segments and the first seconds of the tracks that the player is expected to start
+ * with. A later prepare() of the entry reads them from the cache. Without a cache, only the
+ * connection to the media host is warmed up.
+ */
+class MediaPreloader {
+
+    private static final PKLog log = PKLog.get("MediaPreloader");
+
+    static final long DEFAULT_PRELOAD_DURATION_MS = 10000;
+    private static final long PROGRESSIVE_PRELOAD_BYTES = 1024 * 1024;
+    // Same as AdaptiveTrackSelection's default.
+    private static final float BANDWIDTH_FRACTION = 0.75f;
+
+    // One preload at a time; a new preload cancels the previous one.
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Context context;
+    private final byte[] buffer = new byte[16 * 1024];
+    @Nullable private Future<?> task;
+
+    MediaPreloader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    void preload(final PKMediaSourceConfig sourceConfig) {
+        cancel();
+
+        final Uri uri = sourceConfig.getUrl();
+        final MediaCacheSettings cacheSettings = sourceConfig.playerSettings.getMediaCacheSettings();
+        if (cacheSettings == null || !ExoPlayerWrapper.isCacheable(sourceConfig)) {
+            log.d("No media cache for " + uri + " - only warming up the connection");
+            task = PKHttpClientManager.warmUpAsync(null, uri.toString());
+            return;
+        }
+
+        final DataSource.Factory upstreamFactory = new DefaultDataSourceFactory(context,
+                ExoPlayerWrapper.createHttpDataSourceFactory(context, sourceConfig.playerSettings, null));
+        final DataSource.Factory dataSourceFactory = PKMediaCache.get(cacheSettings).createDataSourceFactory(upstreamFactory);
+        Long initialBitrateEstimate = sourceConfig.playerSettings.getAbrSettings().getInitialBitrateEstimate();
+        if (initialBitrateEstimate == null) {
+            initialBitrateEstimate = new BandwidthEstimateStore(context).load(uri.getHost());
+        }
+        final long bitrateEstimate = initialBitrateEstimate != null ? initialBitrateEstimate : DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE;
+        final PKMediaFormat format = sourceConfig.mediaSource.getMediaFormat();
+        if (format == null) {
+            return;
+        }
+
+        task = executor.submit(() -> {
+            final long start = System.nanoTime();
+            try {
+                final DataSource dataSource = dataSourceFactory.createDataSource();
+                switch (format) {
+                    case dash:
+                        preloadDash(dataSource, uri, bitrateEstimate);
+                        break;
+                    case hls:
+                        preloadHls(dataSource, uri);
+                        break;
+                    case mp4:
+                    case mp3:
+                        load(dataSource, new DataSpec(uri, 0, PROGRESSIVE_PRELOAD_BYTES, null));
+                        break;
+                    default:
+                        log.d("Preload is not supported for " + format);
+                        return;
+                }
+                log.d("Preloaded " + uri + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            } catch (InterruptedIOException e) {
+                log.d("Preload of " + uri + " was canceled");
+            } catch (IOException | RuntimeException e) {
+                // A failed preload only means a colder start.
+                log.w("Failed to preload " + uri + ": " + e);
+            }
+        });
+    }
+
+    void cancel() {
+        if (task != null) {
+            task.cancel(true);
+            task = null;
+        }
+    }
+
+    private void preloadDash(DataSource dataSource, Uri uri, long bitrateEstimate) throws IOException {
+        final DashManifest manifest;
+        final DataSourceInputStream inputStream = new DataSourceInputStream(dataSource, new DataSpec(uri));
+        try {
+            manifest = new DashManifestParser().parse(uri, inputStream);
+        } finally {
+            inputStream.close();
+        }
+
+        if (manifest.getPeriodCount() == 0) {
+            return;
+        }
+        final Period period = manifest.getPeriod(0);
+        final long periodDurationUs = manifest.getPeriodDurationUs(0);
+        final long preloadUs = C.msToUs(DEFAULT_PRELOAD_DURATION_MS);
+
+        // The first video and audio adaptation sets, like the default track selection.
+        boolean hasVideo = false;
+        boolean hasAudio = false;
+        for (AdaptationSet adaptationSet : period.adaptationSets) {
+            final boolean isVideo = adaptationSet.type == C.TRACK_TYPE_VIDEO;
+            final boolean isAudio = adaptationSet.type == C.TRACK_TYPE_AUDIO;
+            if ((isVideo && hasVideo) || (isAudio && hasAudio) || (!isVideo && !isAudio)) {
+                continue;
+            }
+            hasVideo |= isVideo;
+            hasAudio |= isAudio;
+
+            final Representation representation = selectInitialRepresentation(adaptationSet.representations, bitrateEstimate);
+            if (representation == null) {
+                continue;
+            }
+            final String cacheKey = representation.getCacheKey();
+
+            final RangedUri initializationUri = representation.getInitializationUri();
+            if (initializationUri != null) {
+                load(dataSource, toDataSpec(initializationUri, representation.baseUrl, cacheKey));
+            }
+
+            final DashSegmentIndex index = representation.getIndex();
+            if (index == null) {
+                // Single-segment representation, the index is only known after loading it.
+                continue;
+            }
+            final long firstSegmentNum = index.getFirstSegmentNum();
+            final long lastSegmentNum = index.getSegmentNum(preloadUs, periodDurationUs);
+            for (long segmentNum = firstSegmentNum; segmentNum <= lastSegmentNum; segmentNum++) {
+                load(dataSource, toDataSpec(index.getSegmentUrl(segmentNum), representation.baseUrl, cacheKey));
+            }
+        }
+    }
+
+    // Same rule as AdaptiveTrackSelection's initial selection: the highest bitrate that fits the estimate, else the lowest.
+    @Nullable
+    private static Representation selectInitialRepresentation(List<Representation> representations, long bitrateEstimate) {
+        final long effectiveBitrate = (long) (bitrateEstimate * BANDWIDTH_FRACTION);
+        Representation best = null;
+        Representation lowest = null;
+        for (Representation representation : representations) {
+            final int bitrate = representation.format.bitrate;
+            if (lowest == null || bitrate < lowest.format.bitrate) {
+                lowest = representation;
+            }
+            if (bitrate <= effectiveBitrate && (best == null || bitrate > best.format.bitrate)) {
+                best = representation;
+            }
+        }
+        return best != null ? best : lowest;
+    }
+
+    private static DataSpec toDataSpec(RangedUri rangedUri, String baseUrl, @Nullable String cacheKey) {
+        return new DataSpec(rangedUri.resolveUri(baseUrl), rangedUri.start, rangedUri.length, cacheKey);
+    }
+
+    private void preloadHls(DataSource dataSource, Uri uri) throws IOException {
+        HlsPlaylist playlist = loadHlsPlaylist(dataSource, uri);
+        if (playlist instanceof HlsMasterPlaylist) {
+            // The player starts with the first variant.
+            final HlsMasterPlaylist masterPlaylist = (HlsMasterPlaylist) playlist;
+            if (masterPlaylist.variants.isEmpty()) {
+                return;
+            }
+            final Uri variantUri = UriUtil.resolveToUri(masterPlaylist.baseUri, masterPlaylist.variants.get(0).url);
+            playlist = loadHlsPlaylist(dataSource, variantUri);
+        }
+        if (!(playlist instanceof HlsMediaPlaylist)) {
+            return;
+        }
+
+        final HlsMediaPlaylist mediaPlaylist = (HlsMediaPlaylist) playlist;
+        final long preloadUs = C.msToUs(DEFAULT_PRELOAD_DURATION_MS);
+        HlsMediaPlaylist.Segment lastInitializationSegment = null;
+        for (HlsMediaPlaylist.Segment segment : mediaPlaylist.segments) {
+            if (segment.relativeStartTimeUs >= preloadUs) {
+                break;
+            }
+            if (segment.initializationSegment != null && segment.initializationSegment != lastInitializationSegment) {
+                lastInitializationSegment = segment.initializationSegment;
+                load(dataSource, toDataSpec(mediaPlaylist.baseUri, lastInitializationSegment));
+            }
+            load(dataSource, toDataSpec(mediaPlaylist.baseUri, segment));
+        }
+    }
+
+    private static HlsPlaylist loadHlsPlaylist(DataSource dataSource, Uri uri) throws IOException {
+        final DataSourceInputStream inputStream = new DataSourceInputStream(dataSource, new DataSpec(uri));
+        try {
+            return new HlsPlaylistParser().parse(uri, inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static DataSpec toDataSpec(String baseUri, HlsMediaPlaylist.Segment segment) {
+        return new DataSpec(UriUtil.resolveToUri(baseUri, segment.url), segment.byterangeOffset, segment.byterangeLength, null);
+    }
+
+    // Reads the data through the cache, which keeps it.
+    private void load(DataSource dataSource, DataSpec dataSpec) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException();
+        }
+        try {
+            dataSource.open(dataSpec);
+            while (dataSource.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+            }
+        } finally {
+            dataSource.close();
+        }
+    }
+}
@@ -17,8 +17,9 @@ import android.content.Context;
 import android.drm.DrmManagerClient;
 import android.media.MediaDrm;
 import android.media.NotProvisionedException;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 import android.util.Base64;
@@ -29,9 +30,16 @@ import com.kaltura.playkit.PKLog;
 import com.kaltura.playkit.Utils;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @hide
@@ -40,9 +48,26 @@ public class MediaSupport {
 
     public static final UUID WIDEVINE_UUID = UUID.fromString("edef8ba9-79d6-4ace-a3c8-27dcd51d21ed");
     private static final PKLog log = PKLog.get("MediaSupport");
-    private static boolean initSucceeded;
-    @Nullable private static Boolean widevineClassic;
-    @Nullable private static Boolean widevineModular;
+
+    // How long the DRM getters wait for a running initialization, off the main thread.
+    private static final long INIT_WAIT_TIMEOUT_MS = 5000;
+
+    private static final ExecutorService initExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "PlayKitInit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static volatile boolean initSucceeded;
+    @Nullable private static volatile Boolean widevineClassic;
+    @Nullable private static volatile Boolean widevineModular;
+    @Nullable private static volatile String widevineSecurityLevel;
+
+    @Nullable private static FutureTask<Set<PKDrmParams.Scheme>> initTask;
+    private static final List<DrmInitCallback> pendingInitCallbacks = new ArrayList<>();
+    private static boolean provisionPerformed;
+    @Nullable private static Exception provisionError;
     public static final String DEVICE_CHIPSET = getDeviceChipset();
 
 
@@ -73,59 +98,143 @@ public class MediaSupport {
     /**
      * Initialize the DRM subsystem, performing provisioning if required. The callback is called
      * when done. If provisioning was required, it is performed before the callback is called.
+     * <p>
+     * Doesn't block: see {@link #initializeAsync(Context, DrmInitCallback)}.
      *
      * @param context
      * @param drmInitCallback callback object that will get the result. See {@link DrmInitCallback}.
      */
     public static void initializeDrm(Context context, final DrmInitCallback drmInitCallback) {
+        initializeAsync(context, drmInitCallback);
+    }
 
-        if (initSucceeded) {
-            return;
+    /**
+     * Start the initialization of the DRM subsystem and the device workarounds on a background
+     * thread, performing provisioning if required. The results are saved, so after the first
+     * launch of the app on an Android build the initialization only reads them. Calling it again
+     * while the initialization runs, or after it succeeded, doesn't start it again.
+     *
+     * @param context
+     * @param drmInitCallback callback object that will get the result on the main thread, or null. See {@link DrmInitCallback}.
+     * @return a future that completes with the supported DRM schemes when the initialization is done.
+     */
+    public static Future<Set<PKDrmParams.Scheme>> initializeAsync(Context context, @Nullable DrmInitCallback drmInitCallback) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (MediaSupport.class) {
+            if (drmInitCallback != null) {
+                pendingInitCallbacks.add(drmInitCallback);
+            }
+            if (initTask == null || (initTask.isDone() && !initSucceeded)) {
+                initTask = new FutureTask<Set<PKDrmParams.Scheme>>(() -> initialize(appContext)) {
+                    @Override
+                    protected void done() {
+                        runPendingCallbacks();
+                    }
+                };
+                initExecutor.execute(initTask);
+            } else if (initTask.isDone()) {
+                runPendingCallbacks();
+            }
+            return initTask;
+        }
+    }
+
+    // Runs on the init thread.
+    private static Set<PKDrmParams.Scheme> initialize(Context context) {
+        // DRM support is saved with the media capabilities until the OS updates. It's read first,
+        // since the source selection waits for it.
+        final PKMediaCapabilities capabilities = PKMediaCapabilities.load(context);
+        if (capabilities.hasDrmInfo()) {
+            widevineClassic = capabilities.isWidevineClassicSupported();
+            widevineModular = capabilities.isWidevineModularSupported();
+            widevineSecurityLevel = capabilities.getWidevineSecurityLevel();
         }
+
         //Check if device needs codec`s workaround.
         DummySurfaceWorkaroundTest.executeTest(context);
-        try {
-            checkWidevineClassic(context);
-            checkWidevineModular();
 
+        if (capabilities.hasDrmInfo()) {
             initSucceeded = true;
+            return supportedDrmSchemes();
+        }
 
-            runCallback(drmInitCallback, false, null);
+        provisionPerformed = false;
+        provisionError = null;
+        checkWidevineClassic(context);
+        try {
+            checkWidevineModular();
 
         } catch (DrmNotProvisionedException e) {
             log.d("Widevine Modular needs provisioning");
-            AsyncTask.execute(new Runnable() {
-                @Override
-                public void run() {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-                        try {
-                            provisionWidevine();
-                            runCallback(drmInitCallback, true, null);
-                        } catch (Exception e) {
-                            // Send any exception to the callback
-                            log.e("Widevine provisioning has failed", e);
-                            runCallback(drmInitCallback, true, e);
-                        }
-                    }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                provisionPerformed = true;
+                try {
+                    provisionWidevine();
+                } catch (Exception provisionException) {
+                    // Send any exception to the callback
+                    log.e("Widevine provisioning has failed", provisionException);
+                    provisionError = provisionException;
                 }
-            });
+            }
         }
-    }
 
-    private static void runCallback(DrmInitCallback drmInitCallback, boolean provisionPerformed, Exception provisionError) {
+        if (widevineClassic != null && widevineModular != null) {
+            capabilities.setDrmInfo(widevineModular, widevineClassic, widevineSecurityLevel);
+            capabilities.save(context);
+            initSucceeded = true;
+        }
+        return supportedDrmSchemes();
+    }
 
+    private static void runPendingCallbacks() {
+        final List<DrmInitCallback> callbacks;
+        synchronized (MediaSupport.class) {
+            callbacks = new ArrayList<>(pendingInitCallbacks);
+            pendingInitCallbacks.clear();
+        }
         final Set<PKDrmParams.Scheme> supportedDrmSchemes = supportedDrmSchemes();
-        if (drmInitCallback != null) {
-            drmInitCallback.onDrmInitComplete(supportedDrmSchemes, provisionPerformed, provisionError);
+        final boolean provisionPerformed = MediaSupport.provisionPerformed;
+        final Exception provisionError = MediaSupport.provisionError;
 
-        } else if (!initSucceeded) {
-            if (provisionError != null) {
-                log.e("DRM provisioning has failed, but nobody was looking. supportedDrmSchemes may be missing Widevine Modular.");
-            }
-            log.i("Provisioning was" + (provisionPerformed ? " " : " not ") + "performed");
+        if (callbacks.isEmpty() && provisionError != null) {
+            log.e("DRM provisioning has failed, but nobody was looking. supportedDrmSchemes may be missing Widevine Modular.");
         }
-
+        log.i("Provisioning was" + (provisionPerformed ? " " : " not ") + "performed");
         log.i("Supported DRM schemes " + supportedDrmSchemes);
+
+        for (DrmInitCallback callback : callbacks) {
+            mainHandler.post(() -> callback.onDrmInitComplete(supportedDrmSchemes, provisionPerformed, provisionError));
+        }
+    }
+
+    // Called before reading a DRM check that isn't done yet. Doesn't wait on the init thread itself,
+    // or on the main thread, where the provisioning of the first launch would freeze the UI.
+    private static void awaitInitialization() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            return;
+        }
+        final Future<Set<PKDrmParams.Scheme>> task;
+        synchronized (MediaSupport.class) {
+            task = initTask;
+        }
+        if (task == null || task.isDone()) {
+            return;
+        }
+        try {
+            task.get(INIT_WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.w("DRM initialization is not done: " + e);
+        }
+    }
+
+    /**
+     * @return true when the support of the Widevine schemes is known: after the DRM initialization
+     * or {@link #checkDrm(Context)}. Until then, {@link #widevineModular()} and {@link #widevineClassic()}
+     * return false on the main thread, so the player waits for {@link #initializeAsync(Context, DrmInitCallback)}
+     * before it selects the source of a media with DRM.
+     */
+    public static boolean isDrmSupportKnown() {
+        return widevineModular != null && widevineClassic != null;
     }
 
     /**
@@ -144,15 +253,16 @@ public class MediaSupport {
         return supportedDrmSchemes();
     }
 
+    // Reads the fields directly, so that it doesn't wait for the initialization.
     private static Set<PKDrmParams.Scheme> supportedDrmSchemes() {
 
         HashSet<PKDrmParams.Scheme> schemes = new HashSet<>();
 
-        if (widevineModular()) {
+        if (Boolean.TRUE.equals(widevineModular)) {
             schemes.add(PKDrmParams.Scheme.WidevineCENC);
         }
 
-        if (widevineClassic()) {
+        if (Boolean.TRUE.equals(widevineClassic)) {
             schemes.add(PKDrmParams.Scheme.WidevineClassic);
         }
 
@@ -193,7 +303,11 @@ public class MediaSupport {
 
     public static boolean widevineClassic() {
         if (widevineClassic == null) {
-            log.w("Widevine Classic DRM is not initialized; assuming not supported");
+            awaitInitialization();
+        }
+        final Boolean widevineClassic = MediaSupport.widevineClassic;
+        if (widevineClassic == null) {
+            log.w("Widevine Classic DRM is not initialized yet; not supported for now");
             return false;
         }
 
@@ -202,7 +316,11 @@ public class MediaSupport {
 
     public static boolean widevineModular() {
         if (widevineModular == null) {
-            log.w("Widevine Modular DRM is not initialized; assuming not supported");
+            awaitInitialization();
+        }
+        final Boolean widevineModular = MediaSupport.widevineModular;
+        if (widevineModular == null) {
+            log.w("Widevine Modular DRM is not initialized yet; not supported for now");
             return false;
         }
 
@@ -226,6 +344,7 @@ public class MediaSupport {
                 mediaDrm = new MediaDrm(WIDEVINE_UUID);
                 session = mediaDrm.openSession();
                 widevineModular = true;
+                widevineSecurityLevel = getSecurityLevel(mediaDrm);
             } catch (NotProvisionedException e) {
                 log.e("Widevine Modular not provisioned");
                 throw new DrmNotProvisionedException("Widevine Modular not provisioned", e);
@@ -244,6 +363,27 @@ public class MediaSupport {
         }
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
+    @Nullable
+    private static String getSecurityLevel(MediaDrm mediaDrm) {
+        try {
+            return mediaDrm.getPropertyString("securityLevel");
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the Widevine Modular security level, like "L1" or "L3", or null if unknown.
+     */
+    @Nullable
+    public static String widevineSecurityLevel() {
+        if (widevineModular == null) {
+            awaitInitialization();
+        }
+        return widevineSecurityLevel;
+    }
+
     public static boolean playReady() {
         return Boolean.FALSE;   // Not yet.
     }
@@ -262,6 +402,7 @@ public class MediaSupport {
 
             mediaDrm.provideProvisionResponse(response);
             widevineModular = true; // provisioning didn't fail
+            widevineSecurityLevel = getSecurityLevel(mediaDrm);
 
         } catch (Exception e) {
             log.e("Provision Widevine failed", e);
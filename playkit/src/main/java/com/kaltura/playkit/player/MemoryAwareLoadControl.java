@@ -0,0 +1,203 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.kaltura.playkit.PKLog;
+
+/**
+ * {@link DefaultLoadControl} with a cap on the size of the buffered media, so that high bitrate
+ * streams don't run the app out of memory on devices with a small heap. The media buffers are
+ * allocated in the Java heap, so the cap is a fraction of the app's memory class. While the system
+ * reports memory pressure, the cap is lowered until the next media is prepared. See
+ * {@link LoadControlBuffers#setMemoryAwareBuffering(boolean)}.
+ */
+class MemoryAwareLoadControl implements LoadControl, ComponentCallbacks2 {
+
+    private static final PKLog log = PKLog.get("MemoryAwareLoadControl");
+
+    private static final float HEAP_FRACTION = 0.25f;
+    private static final float LOW_RAM_HEAP_FRACTION = 0.125f;
+    // The buffer may grow to this fraction of the heap to hold the min buffer duration.
+    private static final float MAX_HEAP_FRACTION = 0.5f;
+    private static final int MIN_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private final Context context;
+    private final DefaultLoadControl defaultLoadControl;
+    private final LoadControlBuffers loadControlBuffers;
+    private final int memoryBudgetBytes;
+    private final int maxBudgetBytes;
+
+    private volatile float trimFactor = 1;
+    private volatile long selectedBitrate;
+    private volatile int budgetBytes;
+    private boolean isRegistered;
+
+    MemoryAwareLoadControl(Context context, DefaultLoadControl defaultLoadControl, LoadControlBuffers loadControlBuffers) {
+        this.context = context.getApplicationContext();
+        this.defaultLoadControl = defaultLoadControl;
+        this.loadControlBuffers = loadControlBuffers;
+
+        final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        final long heapBytes = (activityManager != null ? activityManager.getMemoryClass() : 64) * 1024L * 1024L;
+        final boolean isLowRamDevice = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT &&
+                activityManager != null && activityManager.isLowRamDevice();
+
+        long budget = (long) (heapBytes * (isLowRamDevice ? LOW_RAM_HEAP_FRACTION : HEAP_FRACTION));
+        long maxBudget = (long) (heapBytes * MAX_HEAP_FRACTION);
+        final int maxPlayerBufferBytes = loadControlBuffers.getMaxPlayerBufferBytes();
+        if (maxPlayerBufferBytes != C.LENGTH_UNSET) {
+            budget = Math.min(budget, maxPlayerBufferBytes);
+            maxBudget = Math.min(maxBudget, maxPlayerBufferBytes);
+        }
+        memoryBudgetBytes = (int) Math.max(MIN_BUFFER_BYTES, budget);
+        maxBudgetBytes = (int) Math.max(memoryBudgetBytes, maxBudget);
+        updateBudget();
+        log.d("Memory class " + heapBytes / 1024 / 1024 + "MB, low RAM " + isLowRamDevice + ", buffer budget " + memoryBudgetBytes + " bytes");
+    }
+
+    private void updateBudget() {
+        int budget = (int) (memoryBudgetBytes * trimFactor);
+
+        // Enough for the min buffer duration at the highest selected bitrates, if the heap allows.
+        final long minBufferBytes = selectedBitrate / 8 * loadControlBuffers.getMinPlayerBufferMs() / 1000;
+        if (trimFactor == 1 && minBufferBytes > budget) {
+            budget = (int) Math.min(minBufferBytes, maxBudgetBytes);
+        }
+        budgetBytes = Math.max(MIN_BUFFER_BYTES, budget);
+    }
+
+    @Override
+    public void onPrepared() {
+        trimFactor = 1;
+        updateBudget();
+        if (!isRegistered) {
+            context.registerComponentCallbacks(this);
+            isRegistered = true;
+        }
+        defaultLoadControl.onPrepared();
+    }
+
+    @Override
+    public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+        // Adaptive selections may switch up, so count the highest bitrate of each.
+        long bitrate = 0;
+        for (int i = 0; i < trackSelections.length; i++) {
+            final TrackSelection selection = trackSelections.get(i);
+            if (selection == null) {
+                continue;
+            }
+            int maxBitrate = 0;
+            for (int j = 0; j < selection.length(); j++) {
+                final Format format = selection.getFormat(j);
+                if (format.bitrate != Format.NO_VALUE) {
+                    maxBitrate = Math.max(maxBitrate, format.bitrate);
+                }
+            }
+            bitrate += maxBitrate;
+        }
+        selectedBitrate = bitrate;
+        updateBudget();
+        defaultLoadControl.onTracksSelected(renderers, trackGroups, trackSelections);
+    }
+
+    @Override
+    public void onStopped() {
+        defaultLoadControl.onStopped();
+    }
+
+    @Override
+    public void onReleased() {
+        if (isRegistered) {
+            context.unregisterComponentCallbacks(this);
+            isRegistered = false;
+        }
+        defaultLoadControl.onReleased();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+        return defaultLoadControl.getAllocator();
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+        return defaultLoadControl.getBackBufferDurationUs();
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+        return defaultLoadControl.retainBackBufferFromKeyframe();
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+        if (isBudgetReached()) {
+            return false;
+        }
+        return defaultLoadControl.shouldContinueLoading(bufferedDurationUs, playbackSpeed);
+    }
+
+    @Override
+    public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+        // A full budget is all the buffer there will be.
+        return isBudgetReached() || defaultLoadControl.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering);
+    }
+
+    private boolean isBudgetReached() {
+        return defaultLoadControl.getAllocator().getTotalBytesAllocated() >= budgetBytes;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        final float factor;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            factor = 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            factor = 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            factor = 0.75f;
+        } else {
+            return;
+        }
+        if (factor < trimFactor) {
+            trimFactor = factor;
+            updateBudget();
+            log.d("onTrimMemory(" + level + "): buffer budget " + budgetBytes + " bytes");
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Not related to memory.
+    }
+}
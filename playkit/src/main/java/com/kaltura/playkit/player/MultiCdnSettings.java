@@ -0,0 +1,66 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+/**
+ * Multi-CDN mode: when the media entry has several sources that only differ by their URL, like the
+ * same stream on different CDNs, the player starts with the selected one and probes all their URLs
+ * in parallel with small GET requests; if another one responds first, before the playback is ready,
+ * the player switches to it. The sources are ranked by their response time; when the playing source
+ * fails too many segment loads, the player switches to the next one in the ranking and keeps the
+ * playback position.
+ */
+public class MultiCdnSettings {
+
+    public static final long DEFAULT_PROBE_TIMEOUT_MS = 1000;
+    public static final int DEFAULT_FAILOVER_ERROR_COUNT = 3;
+    public static final long DEFAULT_FAILOVER_ERROR_WINDOW_MS = 30000;
+
+    private long probeTimeoutMs = DEFAULT_PROBE_TIMEOUT_MS;
+    private int failoverErrorCount = DEFAULT_FAILOVER_ERROR_COUNT;
+    private long failoverErrorWindowMs = DEFAULT_FAILOVER_ERROR_WINDOW_MS;
+
+    public long getProbeTimeoutMs() {
+        return probeTimeoutMs;
+    }
+
+    /**
+     * @param probeTimeoutMs - how long the player waits for the first probe response before it
+     *                       keeps the selected source. Slower responses still go into the ranking,
+     *                       up to three times this timeout.
+     * @return these settings.
+     */
+    public MultiCdnSettings setProbeTimeoutMs(long probeTimeoutMs) {
+        this.probeTimeoutMs = probeTimeoutMs;
+        return this;
+    }
+
+    public int getFailoverErrorCount() {
+        return failoverErrorCount;
+    }
+
+    public long getFailoverErrorWindowMs() {
+        return failoverErrorWindowMs;
+    }
+
+    /**
+     * @param errorCount - number of failed loads that makes the player switch to the next source.
+     * @param windowMs   - the failed loads are counted within this time.
+     * @return these settings.
+     */
+    public MultiCdnSettings setFailoverThreshold(int errorCount, long windowMs) {
+        this.failoverErrorCount = errorCount;
+        this.failoverErrorWindowMs = windowMs;
+        return this;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.os.Handler;
+import android.support.annotation.Nullable;
+import android.util.Pair;
+
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bandwidth meter of the player. Downloads are measured by ExoPlayer's {@link DefaultBandwidthMeter};
+ * its samples go to the app's {@link BandwidthEstimator}, if set, and to a ring of recent samples
+ * for the throughput percentiles of the {@link com.kaltura.playkit.PlaybackInfo}.
+ * <p>
+ * ExoPlayer keeps the meter of its instance, so when the engine starts over, like with a new host
+ * or when a pooled engine is handed to a new player, the meter is {@link #reset} instead of replaced.
+ */
+class PKBandwidthMeter implements BandwidthMeter {
+
+    private static final int PERCENTILE_WINDOW_SIZE = 32;
+    // Smaller downloads measure the latency more than the throughput.
+    private static final long MIN_SAMPLE_BYTES = 16 * 1024;
+
+    private volatile DefaultBandwidthMeter defaultMeter;
+    @Nullable private volatile BandwidthEstimator estimator;
+    private final BandwidthSamples samples = new BandwidthSamples(PERCENTILE_WINDOW_SIZE);
+    // ExoPlayer's listeners, moved to the new default meter on reset.
+    private final List<Pair<Handler, EventListener>> eventListeners = new ArrayList<>();
+
+    PKBandwidthMeter(DefaultBandwidthMeter defaultMeter, @Nullable BandwidthEstimator estimator) {
+        this.defaultMeter = defaultMeter;
+        this.estimator = estimator;
+    }
+
+    /**
+     * Start over with a new default meter and estimator, and without samples. The data sources
+     * that are created after this report to the new meter.
+     */
+    synchronized void reset(DefaultBandwidthMeter defaultMeter, @Nullable BandwidthEstimator estimator) {
+        for (Pair<Handler, EventListener> listener : eventListeners) {
+            this.defaultMeter.removeEventListener(listener.second);
+            defaultMeter.addEventListener(listener.first, listener.second);
+        }
+        this.defaultMeter = defaultMeter;
+        this.estimator = estimator;
+        synchronized (samples) {
+            samples.clear();
+        }
+    }
+
+    // Called with each sample of the default meter.
+    void onBandwidthSample(int elapsedMs, long bytes) {
+        if (elapsedMs <= 0 || bytes < MIN_SAMPLE_BYTES) {
+            return;
+        }
+        synchronized (samples) {
+            samples.add(bytes * 8000 / elapsedMs, bytes);
+        }
+        final BandwidthEstimator estimator = this.estimator;
+        if (estimator != null) {
+            synchronized (estimator) {
+                estimator.addSample(bytes, elapsedMs);
+            }
+        }
+    }
+
+    /**
+     * @param percentile - between 0 and 1.
+     * @return the throughput of the recent downloads at the percentile, in bits per second, or -1 if there were none.
+     */
+    long getThroughputPercentile(float percentile) {
+        synchronized (samples) {
+            return samples.getPercentile(percentile);
+        }
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+        final BandwidthEstimator estimator = this.estimator;
+        if (estimator != null) {
+            final long estimate;
+            synchronized (estimator) {
+                estimate = estimator.getBitrateEstimate();
+            }
+            if (estimate != BandwidthEstimator.NO_ESTIMATE) {
+                return estimate;
+            }
+        }
+        return defaultMeter.getBitrateEstimate();
+    }
+
+    @Nullable
+    @Override
+    public TransferListener getTransferListener() {
+        return defaultMeter.getTransferListener();
+    }
+
+    @Override
+    public synchronized void addEventListener(Handler eventHandler, EventListener eventListener) {
+        eventListeners.add(Pair.create(eventHandler, eventListener));
+        defaultMeter.addEventListener(eventHandler, eventListener);
+    }
+
+    @Override
+    public synchronized void removeEventListener(EventListener eventListener) {
+        for (int i = eventListeners.size() - 1; i >= 0; i--) {
+            if (eventListeners.get(i).second == eventListener) {
+                eventListeners.remove(i);
+            }
+        }
+        defaultMeter.removeEventListener(eventListener);
+    }
+}
@@ -28,6 +28,12 @@ public class PKCodecSupport {
         String mimeType = (type == TrackType.AUDIO) ? MimeTypes.getAudioMediaMimeType(codec) :
                 MimeTypes.getVideoMediaMimeType(codec);
 
+        // Without the saved index (first launch, before the initialization is done), scan the codec list.
+        final PKMediaCapabilities capabilities = PKMediaCapabilities.get();
+        if (capabilities != null) {
+            return capabilities.hasDecoder(mimeType);
+        }
+
         for (int i = 0, codecCount = MediaCodecList.getCodecCount(); i < codecCount; i++) {
             final MediaCodecInfo codecInfo = MediaCodecList.getCodecInfoAt(i);
             for (String supportedType : codecInfo.getSupportedTypes()) {
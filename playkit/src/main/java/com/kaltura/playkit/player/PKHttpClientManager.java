@@ -1,26 +1,63 @@
 package com.kaltura.playkit.player;
 
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
 import com.kaltura.playkit.PKLog;
 import com.kaltura.playkit.PlayKitManager;
+import com.kaltura.playkit.Utils;
+
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
 import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
 
 public class PKHttpClientManager {
 
@@ -34,23 +71,213 @@ public class PKHttpClientManager {
     private static final int MAX_IDLE_CONNECTIONS = 10;
     private static final int KEEP_ALIVE_DURATION = 5;
     private static final int WARMUP_TIMES = 2;
+    private static final int MAX_WARMUP_THREADS = 4;
 
     private static String httpProviderId;
 
+    // Shared by all warm ups; idle threads exit after a while.
+    private static final ThreadPoolExecutor warmUpExecutor = new ThreadPoolExecutor(MAX_WARMUP_THREADS, MAX_WARMUP_THREADS,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread = new Thread(runnable, "PKHttpWarmUp");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        warmUpExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static final ConnectionCounter connectionCounter = new ConnectionCounter();
 
+    // Base of all PlayKit clients: content, license and utility requests share its connection pool and dispatcher.
     private static final OkHttpClient okClient = new OkHttpClient.Builder()
             .followRedirects(false)     // Only warm up explicitly specified URLs
             .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION, TimeUnit.MINUTES))
+            .addNetworkInterceptor(connectionCounter)
             .connectTimeout(3, TimeUnit.SECONDS)
             .readTimeout(3, TimeUnit.SECONDS)
             .protocols(Collections.singletonList(Protocol.HTTP_1_1))    // Avoid http/2 due to https://github.com/google/ExoPlayer/issues/4078
             .build();
 
+    // Same connection pool and TLS socket factory (and so TLS session cache) as the player's clients.
+    private static final OkHttpClient warmUpClient = okClient.newBuilder()
+            .eventListenerFactory(call -> {
+                final ConnectTimings timings = call.request().tag(ConnectTimings.class);
+                return timings != null ? timings : EventListener.NONE;
+            })
+            .build();
+
+    // Player clients without a per-session event listener, by cross protocol redirect setting.
+    private static OkHttpClient playerClient;
+    private static OkHttpClient crossProtocolPlayerClient;
+
+    private static OkHttpClient requestClient;
+
+    // Hosts that failed with HTTP/2 in this process.
+    private static final Set<String> http2FailedHosts = Collections.synchronizedSet(new HashSet<String>());
+
     // Called by the player
     static OkHttpClient.Builder newClientBuilder() {
         return okClient.newBuilder().followRedirects(true);
     }
 
+    // Called by the player. The client is shared unless it needs its own event listener.
+    static synchronized OkHttpClient getPlayerClient(boolean crossProtocolRedirectEnabled, @Nullable EventListener.Factory eventListenerFactory) {
+        if (eventListenerFactory != null) {
+            return newPlayerClientBuilder(crossProtocolRedirectEnabled).eventListenerFactory(eventListenerFactory).build();
+        }
+        if (crossProtocolRedirectEnabled) {
+            if (crossProtocolPlayerClient == null) {
+                crossProtocolPlayerClient = newPlayerClientBuilder(true).build();
+            }
+            return crossProtocolPlayerClient;
+        }
+        if (playerClient == null) {
+            playerClient = newPlayerClientBuilder(false).build();
+        }
+        return playerClient;
+    }
+
+    // Called by the player. Requests to HTTP/2 hosts go to a client that also offers h2, which has its own
+    // connections in the shared pool; everything else goes to the HTTP/1.1 client.
+    static Call.Factory getPlayerCallFactory(boolean crossProtocolRedirectEnabled, @Nullable EventListener.Factory eventListenerFactory,
+                                             @Nullable final Http2Settings http2Settings) {
+        final OkHttpClient http1Client = getPlayerClient(crossProtocolRedirectEnabled, eventListenerFactory);
+        if (http2Settings == null || !http2Settings.isEnabled()) {
+            return http1Client;
+        }
+        return newHttp2CallFactory(http1Client, http2Settings);
+    }
+
+    // Tests call it with a client that trusts their server.
+    static Call.Factory newHttp2CallFactory(final OkHttpClient http1Client, final Http2Settings http2Settings) {
+        final OkHttpClient http2Client = http1Client.newBuilder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addInterceptor(new Http2FallbackInterceptor(http1Client))
+                .addNetworkInterceptor(chain -> {
+                    final Http2Attempt attempt = chain.request().tag(Http2Attempt.class);
+                    if (attempt != null && chain.connection() != null) {
+                        attempt.protocol = chain.connection().protocol();
+                    }
+                    return chain.proceed(chain.request());
+                })
+                .build();
+        return request -> {
+            final String host = request.url().host();
+            final boolean useHttp2 = http2Settings.isEnabledFor(host) && !http2FailedHosts.contains(host);
+            return (useHttp2 ? http2Client : http1Client).newCall(request);
+        };
+    }
+
+    // Tests start with no failed hosts.
+    static void clearHttp2FailedHosts() {
+        http2FailedHosts.clear();
+    }
+
+    private static OkHttpClient.Builder newPlayerClientBuilder(boolean crossProtocolRedirectEnabled) {
+        return newClientBuilder()
+                .followSslRedirects(crossProtocolRedirectEnabled)
+                .connectTimeout(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .readTimeout(DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized OkHttpClient getRequestClient() {
+        if (requestClient == null) {
+            requestClient = newPlayerClientBuilder(false).build();
+        }
+        return requestClient;
+    }
+
+    /**
+     * Execute a small request, like a DRM provisioning or a device capabilities report, with the
+     * http provider. With OkHttp, the request shares the connections of the player.
+     * @param post    POST if true, GET otherwise.
+     * @param url     Request URL.
+     * @param data    Request body, or null.
+     * @param headers Request headers, or null.
+     * @return the response body.
+     * @throws IOException if the request failed or the response status is not 2xx.
+     */
+    public static byte[] executeRequest(boolean post, String url, @Nullable byte[] data, @Nullable Map<String, String> headers) throws IOException {
+        if (useOkHttp()) {
+            return executeOkRequest(post, url, data, headers);
+        }
+        return executeSystemRequest(post, url, data, headers);
+    }
+
+    private static byte[] executeOkRequest(boolean post, String url, @Nullable byte[] data, @Nullable Map<String, String> headers) throws IOException {
+        final Request.Builder request = new Request.Builder().url(url);
+        String contentType = null;
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                request.header(header.getKey(), header.getValue());
+                if ("content-type".equalsIgnoreCase(header.getKey())) {
+                    contentType = header.getValue();
+                }
+            }
+        }
+        if (post) {
+            request.post(RequestBody.create(contentType != null ? MediaType.parse(contentType) : null, data != null ? data : new byte[0]));
+        }
+
+        final Response response = getRequestClient().newCall(request.build()).execute();
+        final ResponseBody body = response.body();
+        try {
+            if (!response.isSuccessful()) {
+                throw new IOException("Request to " + url + " failed with status " + response.code());
+            }
+            return body != null ? body.bytes() : new byte[0];
+        } finally {
+            if (body != null) {
+                body.close();
+            }
+        }
+    }
+
+    private static byte[] executeSystemRequest(boolean post, String url, @Nullable byte[] data, @Nullable Map<String, String> headers) throws IOException {
+        final HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            urlConnection.setRequestMethod(post ? "POST" : "GET");
+
+            if (data != null) {
+                urlConnection.setDoOutput(true);
+            }
+
+            urlConnection.setDoInput(true);
+            if (headers != null) {
+                for (Map.Entry<String, String> requestProperty : headers.entrySet()) {
+                    urlConnection.setRequestProperty(requestProperty.getKey(), requestProperty.getValue());
+                }
+            }
+
+            if (data != null) {
+                OutputStream out = new BufferedOutputStream(urlConnection.getOutputStream());
+                out.write(data);
+                out.close();
+            }
+
+            // Reading the response to the end and closing the stream, without disconnect(), returns the connection to the system's keep-alive pool.
+            InputStream in = new BufferedInputStream(urlConnection.getInputStream());
+            try {
+                return Utils.fullyReadInputStream(in, Integer.MAX_VALUE).toByteArray();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * @return counters of the connections of the OkHttp clients. Always zero with the system http provider.
+     */
+    public static ConnectionStats getConnectionStats() {
+        final ConnectionPool pool = okClient.connectionPool();
+        return new ConnectionStats(pool.connectionCount(), pool.idleConnectionCount(),
+                connectionCounter.getRequestCount(), connectionCounter.getReusedCount());
+    }
+
     // Called by the player
     static boolean useOkHttp() {
         return HTTP_PROVIDER_OK.equalsIgnoreCase(httpProviderId);
@@ -70,60 +297,423 @@ public class PKHttpClientManager {
     }
 
     /**
-     * Warm up the connection to a list of URLs. There should be only one URL per host, and the URLs
-     * should resolve to valid pathnames. A good choice might be favicon.ico or crossdomain.xml.
+     * Warm up the connection to a list of URLs, blocking until done or for up to 6 seconds. Prefer
+     * {@link #warmUpAsync(WarmUpListener, String...)} on the main thread.
      * @param urls List of URLs.
      */
     public static void warmUp(String... urls) {
-        final ExecutorService service = Executors.newCachedThreadPool();
-
-        List<Callable<Void>> calls = new ArrayList<>(urls.length);
-        for (String url : urls) {
-            final Callable<Void> callable = useOkHttp() ? getOkCallable(url) : getSystemCallable(url);
+        try {
+            warmUpAsync(null, urls).get(6, TimeUnit.SECONDS);
+            log.d("All urls finished");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.w("Warm up did not finish: " + e);
+        }
+    }
 
-            for (int i = 0; i < WARMUP_TIMES; i++) {
-                calls.add(callable);
+    /**
+     * Warm up the connection to a list of URLs in the background: resolve the host, then open
+     * {@value #WARMUP_TIMES} connections to it, so that the player's first requests skip DNS, TCP and
+     * TLS handshakes. Connections and TLS sessions are shared with the player's OkHttp clients when
+     * OkHttp is the http provider, and with the system's HttpsURLConnection otherwise.
+     * <p>
+     * There should be only one URL per host, and the URLs should resolve to valid pathnames. A good
+     * choice might be favicon.ico or crossdomain.xml.
+     *
+     * @param listener Called on a background thread with the result of each URL as soon as it's done,
+     *                 so in order of completion; concurrent calls are possible. May be null.
+     * @param urls     List of URLs.
+     * @return a future of the results, in the order of the URLs. Cancelling it stops the pending warm ups.
+     */
+    public static Future<List<WarmUpResult>> warmUpAsync(@Nullable WarmUpListener listener, String... urls) {
+        final WarmUpBatch batch = new WarmUpBatch(urls.length, listener);
+        for (int i = 0; i < urls.length; i++) {
+            final int index = i;
+            final String url = urls[i];
+            final boolean okHttp = useOkHttp();
+            // The first connection is measured; the others only open parallel connections for audio, video etc.
+            batch.add(warmUpExecutor.submit(() -> batch.setResult(index, warmUpUrl(url, okHttp))));
+            for (int j = 1; j < WARMUP_TIMES; j++) {
+                batch.add(warmUpExecutor.submit(() -> {
+                    try {
+                        openConnection(url, okHttp, null);
+                    } catch (IOException | RuntimeException e) {
+                        log.d("Warm up of " + url + " failed: " + e);
+                    }
+                }));
             }
         }
+        if (urls.length == 0) {
+            batch.run();
+        }
+        return batch;
+    }
 
+    private static WarmUpResult warmUpUrl(String url, boolean okHttp) {
+        final long start = SystemClock.elapsedRealtime();
+        final String host = Uri.parse(url).getHost();
+        long dnsMs = -1;
         try {
-            service.invokeAll(calls, 6, TimeUnit.SECONDS);
-            log.d("All urls finished");
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            if (host != null) {
+                // Fills the system's DNS cache, which both OkHttp and HttpURLConnection use.
+                InetAddress.getAllByName(host);
+                dnsMs = SystemClock.elapsedRealtime() - start;
+            }
+            final ConnectTimings timings = new ConnectTimings();
+            openConnection(url, okHttp, timings);
+            return new WarmUpResult(url, host, dnsMs, timings.connectMs(), timings.tlsMs(),
+                    SystemClock.elapsedRealtime() - start, null);
+        } catch (IOException | RuntimeException e) {
+            log.d("Warm up of " + url + " failed: " + e);
+            return new WarmUpResult(url, host, dnsMs, -1, -1, SystemClock.elapsedRealtime() - start, e);
         }
     }
 
-    private static Callable<Void> getSystemCallable(String url) {
-        return () -> {
+    private static void openConnection(String url, boolean okHttp, @Nullable ConnectTimings timings) throws IOException {
+        if (okHttp) {
+            final Request.Builder request = new Request.Builder()
+                    .url(url)
+                    .header("user-agent", PKHttpClientManager.warmUpUserAgent);
+            if (timings != null) {
+                request.tag(ConnectTimings.class, timings);
+            }
+            final Response response = warmUpClient.newCall(request.build()).execute();
+            final ResponseBody body = response.body();
+            if (body != null) {
+                body.close();
+            }
+        } else {
+            final HttpURLConnection urlConnection = ((HttpURLConnection) new URL(url).openConnection());
+            urlConnection.setConnectTimeout(3000);
+            urlConnection.setReadTimeout(3000);
+            urlConnection.addRequestProperty("user-agent", PKHttpClientManager.warmUpUserAgent);
             try {
-                final HttpURLConnection urlConnection = ((HttpURLConnection) new URL(url).openConnection());
-                urlConnection.setConnectTimeout(3000);
-                urlConnection.setReadTimeout(3000);
-                urlConnection.addRequestProperty("user-agent", PKHttpClientManager.warmUpUserAgent);
-                final InputStream inputStream = urlConnection.getInputStream();
-                inputStream.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            return null;
-        };
+                // As in executeSystemRequest(): read to the end and close, without disconnect(), to keep the connection pooled.
+                InputStream in = new BufferedInputStream(urlConnection.getInputStream());
+                try {
+                    Utils.fullyReadInputStream(in, Integer.MAX_VALUE);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                urlConnection.disconnect();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Result of warming up one URL. Durations are in milliseconds, -1 if unknown: connect and TLS
+     * durations are only measured with OkHttp, and are 0 if an existing connection was reused.
+     */
+    public static class WarmUpResult {
+        public final String url;
+        public final String host;
+        public final long dnsMs;
+        public final long connectMs;
+        public final long tlsMs;
+        public final long totalMs;
+        @Nullable public final Exception error;
+
+        WarmUpResult(String url, String host, long dnsMs, long connectMs, long tlsMs, long totalMs, @Nullable Exception error) {
+            this.url = url;
+            this.host = host;
+            this.dnsMs = dnsMs;
+            this.connectMs = connectMs;
+            this.tlsMs = tlsMs;
+            this.totalMs = totalMs;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return "WarmUpResult{host=" + host + ", dnsMs=" + dnsMs + ", connectMs=" + connectMs + ", tlsMs=" + tlsMs +
+                    ", totalMs=" + totalMs + (error != null ? ", error=" + error : "") + "}";
+        }
+    }
+
+    /**
+     * Snapshot of the shared connection pool. A request reuses a connection if the connection
+     * already carried an earlier request, including a warm up.
+     */
+    public static class ConnectionStats {
+        public final int connectionCount;
+        public final int idleConnectionCount;
+        public final int activeConnectionCount;
+        public final long requestCount;
+        public final long reusedConnectionCount;
+
+        ConnectionStats(int connectionCount, int idleConnectionCount, long requestCount, long reusedConnectionCount) {
+            this.connectionCount = connectionCount;
+            this.idleConnectionCount = idleConnectionCount;
+            this.activeConnectionCount = Math.max(0, connectionCount - idleConnectionCount);
+            this.requestCount = requestCount;
+            this.reusedConnectionCount = reusedConnectionCount;
+        }
+
+        /**
+         * @return the fraction of requests that reused a connection, between 0 and 1.
+         */
+        public float getReuseRatio() {
+            return requestCount > 0 ? (float) reusedConnectionCount / requestCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "ConnectionStats{connections=" + connectionCount + ", idle=" + idleConnectionCount + ", active=" + activeConnectionCount +
+                    ", requests=" + requestCount + ", reused=" + reusedConnectionCount + ", reuseRatio=" + getReuseRatio() + "}";
+        }
     }
 
-    private static Callable<Void> getOkCallable(String url) {
-        return () -> {
-            final Call call = PKHttpClientManager.okClient.newCall(
-                    new Request.Builder()
-                            .url(url)
-                            .header("user-agent", PKHttpClientManager.warmUpUserAgent)
-                            .build()
-            );
-            final Response response = call.execute();
+    // Request tag of a call to an HTTP/2 host: the protocol of the connection that the request went out on.
+    private static class Http2Attempt {
+        volatile Protocol protocol;
+    }
+
+    // Retries a request with HTTP/1.1 if it failed on an HTTP/2 connection, like with a stream reset or
+    // a GOAWAY, and keeps the host on HTTP/1.1. Timeouts are not HTTP/2 failures.
+    private static class Http2FallbackInterceptor implements Interceptor {
+        private static final long CANCEL_CHECK_INTERVAL_MS = 100;
+
+        private final OkHttpClient http1Client;
+
+        Http2FallbackInterceptor(OkHttpClient http1Client) {
+            this.http1Client = http1Client;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            final Http2Attempt attempt = new Http2Attempt();
+            final String host = chain.request().url().host();
+            final Response response;
+            try {
+                response = chain.proceed(chain.request().newBuilder().tag(Http2Attempt.class, attempt).build());
+            } catch (IOException e) {
+                if (attempt.protocol != Protocol.HTTP_2 || !isHttp2Failure(e, chain.call())) {
+                    throw e;
+                }
+                log.w("HTTP/2 failed with " + host + ", falling back to HTTP/1.1: " + e);
+                http2FailedHosts.add(host);
+                return executeFallback(chain.call(), http1Client.newCall(chain.request()));
+            }
+
             final ResponseBody body = response.body();
-            if (body != null) {
-                body.close();
+            if (attempt.protocol != Protocol.HTTP_2 || body == null) {
+                return response;
             }
-            return null;
-        };
+            return response.newBuilder().body(new Http2ResponseBody(body, chain.call(), host)).build();
+        }
+
+        private static boolean isHttp2Failure(IOException e, Call call) {
+            return !(e instanceof InterruptedIOException) && !call.isCanceled();
+        }
+
+        // Runs the fallback call until it's done, and cancels it if the original call is canceled or times out.
+        private static Response executeFallback(Call call, Call fallbackCall) throws IOException {
+            final CountDownLatch done = new CountDownLatch(1);
+            final AtomicReference<Response> response = new AtomicReference<>();
+            final AtomicReference<IOException> failure = new AtomicReference<>();
+            fallbackCall.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call fallbackCall, IOException e) {
+                    failure.set(e);
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call fallbackCall, Response fallbackResponse) {
+                    response.set(fallbackResponse);
+                    done.countDown();
+                }
+            });
+
+            try {
+                while (!done.await(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    if (call.isCanceled()) {
+                        fallbackCall.cancel();
+                    }
+                }
+            } catch (InterruptedException e) {
+                fallbackCall.cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("HTTP/1.1 fallback interrupted");
+            }
+
+            if (response.get() == null) {
+                throw failure.get();
+            }
+            return response.get();
+        }
+
+        // Once the headers arrived the request can't be retried here: if the stream fails while the body
+        // is read, the read fails but the host is kept on HTTP/1.1, so the caller's retry goes over it.
+        private static class Http2ResponseBody extends ResponseBody {
+            private final ResponseBody body;
+            private final BufferedSource source;
+
+            Http2ResponseBody(ResponseBody body, final Call call, final String host) {
+                this.body = body;
+                this.source = Okio.buffer(new ForwardingSource(body.source()) {
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        try {
+                            return super.read(sink, byteCount);
+                        } catch (IOException e) {
+                            if (isHttp2Failure(e, call) && http2FailedHosts.add(host)) {
+                                log.w("HTTP/2 failed with " + host + " while reading the body, using HTTP/1.1 from now on: " + e);
+                            }
+                            throw e;
+                        }
+                    }
+                });
+            }
+
+            @Nullable
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                return body.contentLength();
+            }
+
+            @Override
+            public BufferedSource source() {
+                return source;
+            }
+        }
+    }
+
+    // Counts the requests that go to the network and the ones that ride on a connection that was used before.
+    private static class ConnectionCounter implements Interceptor {
+        private final Set<Connection> usedConnections = Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>());
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong reusedCount = new AtomicLong();
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            final Connection connection = chain.connection();
+            if (connection != null) {
+                requestCount.incrementAndGet();
+                final boolean isNew;
+                synchronized (usedConnections) {
+                    isNew = usedConnections.add(connection);
+                }
+                if (!isNew) {
+                    reusedCount.incrementAndGet();
+                }
+            }
+            return chain.proceed(chain.request());
+        }
+
+        long getRequestCount() {
+            return requestCount.get();
+        }
+
+        long getReusedCount() {
+            return reusedCount.get();
+        }
+    }
+
+    public interface WarmUpListener {
+        void onWarmUpResult(WarmUpResult result);
+    }
+
+    // Connect and TLS times of a warm up call, reported by OkHttp.
+    private static class ConnectTimings extends EventListener {
+        private volatile long connectStart = -1;
+        private volatile long connectEnd = -1;
+        private volatile long secureConnectStart = -1;
+        private volatile long secureConnectEnd = -1;
+        private volatile boolean connectionAcquired;
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+            secureConnectEnd = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+            connectEnd = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionAcquired = true;
+        }
+
+        long connectMs() {
+            if (connectStart < 0) {
+                return connectionAcquired ? 0 : -1;
+            }
+            return connectEnd >= 0 ? connectEnd - connectStart : -1;
+        }
+
+        long tlsMs() {
+            if (secureConnectStart < 0) {
+                return connectionAcquired ? 0 : -1;
+            }
+            return secureConnectEnd >= 0 ? secureConnectEnd - secureConnectStart : -1;
+        }
+    }
+
+    // Completes when all the calls of a warmUpAsync() are done. Not run by the executor, so it doesn't hold a thread.
+    private static class WarmUpBatch extends FutureTask<List<WarmUpResult>> {
+        private final WarmUpResult[] results;
+        private final List<Future<?>> calls = new ArrayList<>();
+        @Nullable private final WarmUpListener listener;
+        private int pendingResults;
+
+        WarmUpBatch(int size, @Nullable WarmUpListener listener) {
+            this(new WarmUpResult[size], listener);
+        }
+
+        private WarmUpBatch(WarmUpResult[] results, @Nullable WarmUpListener listener) {
+            super(() -> Collections.unmodifiableList(Arrays.asList(results)));
+            this.results = results;
+            this.listener = listener;
+            this.pendingResults = results.length;
+        }
+
+        synchronized void add(Future<?> call) {
+            calls.add(call);
+        }
+
+        void setResult(int index, WarmUpResult result) {
+            if (listener != null) {
+                listener.onWarmUpResult(result);
+            }
+            final boolean done;
+            synchronized (this) {
+                results[index] = result;
+                done = --pendingResults == 0;
+            }
+            if (done) {
+                run();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                for (Future<?> call : calls) {
+                    call.cancel(mayInterruptIfRunning);
+                }
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
     }
 }
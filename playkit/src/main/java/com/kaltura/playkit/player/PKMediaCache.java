@@ -0,0 +1,291 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSinkFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.kaltura.playkit.PKLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk LRU cache of downloaded media, shared by all players that use the same cache directory.
+ * Manifests and initialization segments have their own budget, so that a long session doesn't evict
+ * the small files that are needed to start playing again. Live media is not cached.
+ * <p>
+ * Enabled with {@link com.kaltura.playkit.Player.Settings#setMediaCacheSettings(MediaCacheSettings)}; the instance and its
+ * hit/miss counters are available with {@link #get(MediaCacheSettings)}.
+ */
+public class PKMediaCache {
+
+    private static final PKLog log = PKLog.get("PKMediaCache");
+
+    // SimpleCache allows only one instance per directory. Key is the canonical cache directory.
+    private static final Map<String, PKMediaCache> instances = new HashMap<>();
+
+    private static final int CACHE_FLAGS = CacheDataSource.FLAG_BLOCK_ON_CACHE | CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR;
+
+    private final MediaCacheSettings settings;
+    private final SimpleCache mediaCache;
+    private final SimpleCache metadataCache;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong hitBytes = new AtomicLong();
+
+    private final CacheDataSource.EventListener cacheEventListener = new CacheDataSource.EventListener() {
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            hitCount.incrementAndGet();
+            hitBytes.addAndGet(cachedBytesRead);
+        }
+
+        @Override
+        public void onCacheIgnored(int reason) {
+            log.d("Cache ignored, reason " + reason);
+        }
+    };
+
+    private PKMediaCache(MediaCacheSettings settings) {
+        this.settings = settings;
+        final File directory = settings.getCacheDirectory();
+        mediaCache = new SimpleCache(new File(directory, "media"), new LeastRecentlyUsedCacheEvictor(settings.getMaxMediaCacheBytes()));
+        metadataCache = new SimpleCache(new File(directory, "metadata"), new LeastRecentlyUsedCacheEvictor(settings.getMaxMetadataCacheBytes()));
+    }
+
+    /**
+     * Get the cache of the settings' directory, creating it if needed. The budgets are set when the
+     * cache is created; later settings for the same directory only change the budgets after a restart.
+     * @param settings Cache settings.
+     * @return the cache.
+     */
+    @NonNull
+    public static synchronized PKMediaCache get(@NonNull MediaCacheSettings settings) {
+        final String key = canonicalPath(settings.getCacheDirectory());
+        PKMediaCache cache = instances.get(key);
+        if (cache == null) {
+            cache = new PKMediaCache(settings);
+            instances.put(key, cache);
+        } else if (cache.settings.getMaxMediaCacheBytes() != settings.getMaxMediaCacheBytes() ||
+                cache.settings.getMaxMetadataCacheBytes() != settings.getMaxMetadataCacheBytes()) {
+            log.w("Media cache in " + key + " is already open with different budgets - keeping the existing ones");
+        }
+        return cache;
+    }
+
+    private static String canonicalPath(File directory) {
+        try {
+            return directory.getCanonicalPath();
+        } catch (IOException e) {
+            return directory.getAbsolutePath();
+        }
+    }
+
+    // Called by the player
+    DataSource.Factory createDataSourceFactory(DataSource.Factory upstreamFactory) {
+        final DataSource.Factory mediaFactory = createCacheDataSourceFactory(mediaCache, upstreamFactory);
+        final DataSource.Factory metadataFactory = createCacheDataSourceFactory(metadataCache, upstreamFactory);
+        return () -> new RoutingDataSource(upstreamFactory, mediaFactory, metadataFactory);
+    }
+
+    private DataSource.Factory createCacheDataSourceFactory(SimpleCache cache, DataSource.Factory upstreamFactory) {
+        return new CacheDataSourceFactory(cache, upstreamFactory, new FileDataSourceFactory(),
+                new CacheDataSinkFactory(cache, CacheDataSource.DEFAULT_MAX_CACHE_FILE_SIZE), CACHE_FLAGS, cacheEventListener);
+    }
+
+    // Manifests and playlists, and initialization segments by their common naming ("init.mp4", "init-v1.m4s" etc).
+    static boolean isMetadata(Uri uri) {
+        final String path = uri.getPath();
+        if (path == null) {
+            return false;
+        }
+        final String lowerPath = path.toLowerCase(Locale.US);
+        if (lowerPath.endsWith(".mpd") || lowerPath.endsWith(".m3u8") || lowerPath.endsWith("/manifest")) {
+            return true;
+        }
+        final String lastSegment = uri.getLastPathSegment();
+        return lastSegment != null && lastSegment.toLowerCase(Locale.US).contains("init");
+    }
+
+    /**
+     * @return the number of requests that were looked up in the cache.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of requests that were served, fully or partially, from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of requests that were fully downloaded.
+     */
+    public long getMissCount() {
+        return Math.max(0, requestCount.get() - hitCount.get());
+    }
+
+    /**
+     * @return the number of bytes that were read from the cache.
+     */
+    public long getHitBytes() {
+        return hitBytes.get();
+    }
+
+    /**
+     * @return the number of bytes that were downloaded.
+     */
+    public long getMissBytes() {
+        return Math.max(0, requestBytes.get() - hitBytes.get());
+    }
+
+    /**
+     * @return the size of the cached media segments, in bytes.
+     */
+    public long getMediaCacheBytes() {
+        return mediaCache.getCacheSpace();
+    }
+
+    /**
+     * @return the size of the cached manifests and initialization segments, in bytes.
+     */
+    public long getMetadataCacheBytes() {
+        return metadataCache.getCacheSpace();
+    }
+
+    @Override
+    public String toString() {
+        return "PKMediaCache{requests=" + getRequestCount() + ", hits=" + getHitCount() + ", misses=" + getMissCount() +
+                ", hitBytes=" + getHitBytes() + ", missBytes=" + getMissBytes() +
+                ", mediaCacheBytes=" + getMediaCacheBytes() + ", metadataCacheBytes=" + getMetadataCacheBytes() + "}";
+    }
+
+    // Reads http(s) requests through the media or metadata cache, and anything else (local files etc) directly.
+    private class RoutingDataSource implements DataSource {
+
+        private final DataSource.Factory upstreamFactory;
+        private final DataSource.Factory mediaFactory;
+        private final DataSource.Factory metadataFactory;
+        private final List<TransferListener> transferListeners = new ArrayList<>();
+
+        private DataSource upstream;
+        private DataSource media;
+        private DataSource metadata;
+
+        @Nullable private DataSource current;
+        private boolean isCurrentCached;
+        private long currentBytesRead;
+
+        RoutingDataSource(DataSource.Factory upstreamFactory, DataSource.Factory mediaFactory, DataSource.Factory metadataFactory) {
+            this.upstreamFactory = upstreamFactory;
+            this.mediaFactory = mediaFactory;
+            this.metadataFactory = metadataFactory;
+        }
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+            transferListeners.add(transferListener);
+            for (DataSource dataSource : new DataSource[]{upstream, media, metadata}) {
+                if (dataSource != null) {
+                    dataSource.addTransferListener(transferListener);
+                }
+            }
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            final String scheme = dataSpec.uri.getScheme();
+            isCurrentCached = "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+            currentBytesRead = 0;
+
+            if (!isCurrentCached) {
+                current = upstream = create(upstream, upstreamFactory);
+            } else if (isMetadata(dataSpec.uri)) {
+                current = metadata = create(metadata, metadataFactory);
+            } else {
+                current = media = create(media, mediaFactory);
+            }
+            return current.open(dataSpec);
+        }
+
+        private DataSource create(@Nullable DataSource existing, DataSource.Factory factory) {
+            if (existing != null) {
+                return existing;
+            }
+            final DataSource dataSource = factory.createDataSource();
+            for (TransferListener transferListener : transferListeners) {
+                dataSource.addTransferListener(transferListener);
+            }
+            return dataSource;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            final int bytesRead = current.read(buffer, offset, readLength);
+            if (bytesRead > 0) {
+                currentBytesRead += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+            return current != null ? current.getUri() : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return current != null ? current.getResponseHeaders() : Collections.emptyMap();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current == null) {
+                return;
+            }
+            try {
+                current.close();
+            } finally {
+                if (isCurrentCached) {
+                    requestCount.incrementAndGet();
+                    requestBytes.addAndGet(currentBytesRead);
+                }
+                current = null;
+            }
+        }
+    }
+}
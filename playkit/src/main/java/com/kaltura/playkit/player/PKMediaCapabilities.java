@@ -0,0 +1,495 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Range;
+
+import com.kaltura.playkit.PKDeviceCapabilities;
+import com.kaltura.playkit.PKLog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the media capabilities of the device: the decoders of each MIME type, with their
+ * hardware/secure flags, max video size, max frame rate at standard sizes and max level of each
+ * profile, and the supported DRM schemes. It's built once per Android build (Build.FINGERPRINT) by the PlayKit
+ * initialization on its background thread, and saved, so lookups don't scan the MediaCodecList
+ * or open DRM sessions. See {@link com.kaltura.playkit.PlayKitManager#initialize(Context)}.
+ */
+public class PKMediaCapabilities {
+
+    private static final PKLog log = PKLog.get("PKMediaCapabilities");
+
+    private static final String PREFS_ENTRY_MEDIA_CAPABILITIES = "MediaCapabilities";
+    // Bump when the saved format changes.
+    private static final int FORMAT_VERSION = 2;
+
+    // Sizes whose max frame rate is indexed, as {long side, short side}. A video is checked at the
+    // smallest one that covers it, since the max frame rate of a decoder depends on the size.
+    private static final int[][] STANDARD_SIZES = {
+            {640, 360}, {854, 480}, {1280, 720}, {1920, 1080}, {2560, 1440}, {3840, 2160}, {7680, 4320}
+    };
+
+    @Nullable private static volatile PKMediaCapabilities instance;
+
+    private final Map<String, List<Decoder>> decodersByMimeType;
+
+    // DRM support is only known after the DRM initialization succeeded.
+    private volatile boolean hasDrmInfo;
+    private volatile boolean widevineModular;
+    private volatile boolean widevineClassic;
+    @Nullable private volatile String widevineSecurityLevel;
+
+    /**
+     * Decoder of one MIME type.
+     */
+    public static class Decoder {
+        public final String name;
+        public final String mimeType;
+        public final boolean hardware;
+        public final boolean secure;
+        // Video decoders on Android 5.0 and up; 0 if unknown. The max frame rate is the best at any size.
+        public final int maxWidth;
+        public final int maxHeight;
+        public final int maxFrameRate;
+        // Max frame rate at each of STANDARD_SIZES: 0 if unknown, -1 if the size isn't supported.
+        private final int[] maxFrameRates;
+        // Max level of each profile, see MediaCodecInfo.CodecProfileLevel.
+        private final Map<Integer, Integer> maxLevels;
+
+        Decoder(String name, String mimeType, boolean hardware, boolean secure, int maxWidth, int maxHeight, int maxFrameRate,
+                int[] maxFrameRates, Map<Integer, Integer> maxLevels) {
+            this.name = name;
+            this.mimeType = mimeType;
+            this.hardware = hardware;
+            this.secure = secure;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.maxFrameRate = maxFrameRate;
+            this.maxFrameRates = maxFrameRates;
+            this.maxLevels = maxLevels;
+        }
+
+        /**
+         * @return the max level of the profile, or -1 if the decoder doesn't declare the profile.
+         */
+        public int getMaxLevel(int profile) {
+            final Integer level = maxLevels.get(profile);
+            return level != null ? level : -1;
+        }
+
+        /**
+         * @return true if the decoder declares the profile, or doesn't declare any profile.
+         */
+        public boolean supportsProfile(int profile) {
+            return maxLevels.isEmpty() || maxLevels.containsKey(profile);
+        }
+
+        /**
+         * @return the max frame rate at the video size, in either orientation, or 0 if unknown. It's the
+         * rate at the smallest indexed size that covers the video, so it may be a bit low for odd sizes.
+         */
+        public int getMaxFrameRate(int width, int height) {
+            final int longSide = Math.max(width, height);
+            final int shortSide = Math.min(width, height);
+            for (int i = 0; i < STANDARD_SIZES.length && i < maxFrameRates.length; i++) {
+                if (longSide <= STANDARD_SIZES[i][0] && shortSide <= STANDARD_SIZES[i][1]) {
+                    // A standard size may not be supported while the video is; then only the max size tells.
+                    return Math.max(0, maxFrameRates[i]);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return true if the decoder declares support for the video size, and for the frame rate at
+         * that size. Unknown sizes and limits don't fail the check.
+         */
+        public boolean isVideoSupported(int width, int height, float frameRate) {
+            if ((maxWidth != 0 && width > maxWidth) || (maxHeight != 0 && height > maxHeight)) {
+                return false;
+            }
+            if (frameRate <= 0) {
+                return true;
+            }
+            int rate = width > 0 && height > 0 ? getMaxFrameRate(width, height) : 0;
+            if (rate == 0) {
+                rate = maxFrameRate;
+            }
+            return rate == 0 || frameRate <= rate;
+        }
+
+        @Override
+        public String toString() {
+            return name + (hardware ? " (hw" : " (sw") + (secure ? ", secure)" : ")");
+        }
+    }
+
+    private PKMediaCapabilities(Map<String, List<Decoder>> decodersByMimeType) {
+        this.decodersByMimeType = decodersByMimeType;
+    }
+
+    /**
+     * @return the capabilities index, or null until the PlayKit initialization loaded it.
+     */
+    @Nullable
+    public static PKMediaCapabilities get() {
+        return instance;
+    }
+
+    /**
+     * Read the saved index, or build it if the OS was updated since it was saved. Blocks while it
+     * reads or builds the index, so it should be called on a background thread.
+     *
+     * @param context - the application context.
+     * @return the capabilities index.
+     */
+    @NonNull
+    public static synchronized PKMediaCapabilities load(Context context) {
+        if (instance != null) {
+            return instance;
+        }
+
+        final SharedPreferences sharedPrefs = context.getSharedPreferences(PKDeviceCapabilities.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        PKMediaCapabilities capabilities = null;
+        final String saved = sharedPrefs.getString(PREFS_ENTRY_MEDIA_CAPABILITIES, null);
+        if (saved != null) {
+            try {
+                capabilities = fromJson(new JSONObject(saved));
+            } catch (JSONException e) {
+                log.w("Failed to read the saved media capabilities: " + e);
+            }
+        }
+
+        if (capabilities == null) {
+            final long startTime = System.currentTimeMillis();
+            capabilities = new PKMediaCapabilities(scanDecoders());
+            log.d("Indexed the decoders in " + (System.currentTimeMillis() - startTime) + "ms");
+            capabilities.save(context);
+        }
+
+        instance = capabilities;
+        return capabilities;
+    }
+
+    synchronized void save(Context context) {
+        try {
+            context.getSharedPreferences(PKDeviceCapabilities.SHARED_PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putString(PREFS_ENTRY_MEDIA_CAPABILITIES, toJson().toString())
+                    .apply();
+        } catch (JSONException e) {
+            log.e("Failed to save the media capabilities", e);
+        }
+    }
+
+    void setDrmInfo(boolean widevineModular, boolean widevineClassic, @Nullable String widevineSecurityLevel) {
+        this.widevineModular = widevineModular;
+        this.widevineClassic = widevineClassic;
+        this.widevineSecurityLevel = widevineSecurityLevel;
+        this.hasDrmInfo = true;
+    }
+
+    boolean hasDrmInfo() {
+        return hasDrmInfo;
+    }
+
+    /**
+     * @return the MIME types that have a decoder.
+     */
+    @NonNull
+    public Set<String> getMimeTypes() {
+        return Collections.unmodifiableSet(decodersByMimeType.keySet());
+    }
+
+    /**
+     * @param mimeType - for example "video/avc".
+     * @return the decoders of the MIME type, in the platform's order of preference.
+     */
+    @NonNull
+    public List<Decoder> getDecoders(@Nullable String mimeType) {
+        final List<Decoder> decoders = mimeType != null ? decodersByMimeType.get(mimeType.toLowerCase(Locale.US)) : null;
+        return decoders != null ? decoders : Collections.<Decoder>emptyList();
+    }
+
+    public boolean hasDecoder(@Nullable String mimeType) {
+        return !getDecoders(mimeType).isEmpty();
+    }
+
+    public boolean hasHardwareDecoder(@Nullable String mimeType) {
+        for (Decoder decoder : getDecoders(mimeType)) {
+            if (decoder.hardware) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasSecureDecoder(@Nullable String mimeType) {
+        for (Decoder decoder : getDecoders(mimeType)) {
+            if (decoder.secure) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the max level of the profile among the decoders of the MIME type, or -1 if none declares the profile.
+     */
+    public int getMaxLevel(@Nullable String mimeType, int profile, boolean hardwareOnly) {
+        int maxLevel = -1;
+        for (Decoder decoder : getDecoders(mimeType)) {
+            if (!hardwareOnly || decoder.hardware) {
+                maxLevel = Math.max(maxLevel, decoder.getMaxLevel(profile));
+            }
+        }
+        return maxLevel;
+    }
+
+    /**
+     * @return true if one of the decoders of the MIME type declares support for the video size and frame rate.
+     */
+    public boolean isVideoSupported(@Nullable String mimeType, int width, int height, float frameRate, boolean hardwareOnly) {
+        for (Decoder decoder : getDecoders(mimeType)) {
+            if ((!hardwareOnly || decoder.hardware) && decoder.isVideoSupported(width, height, frameRate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isWidevineModularSupported() {
+        return widevineModular;
+    }
+
+    public boolean isWidevineClassicSupported() {
+        return widevineClassic;
+    }
+
+    /**
+     * @return the Widevine Modular security level, like "L1" or "L3", or null if unknown.
+     */
+    @Nullable
+    public String getWidevineSecurityLevel() {
+        return widevineSecurityLevel;
+    }
+
+    private static Map<String, List<Decoder>> scanDecoders() {
+        final List<MediaCodecInfo> codecInfos = new ArrayList<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            Collections.addAll(codecInfos, new MediaCodecList(MediaCodecList.ALL_CODECS).getCodecInfos());
+        } else {
+            for (int i = 0, codecCount = MediaCodecList.getCodecCount(); i < codecCount; i++) {
+                codecInfos.add(MediaCodecList.getCodecInfoAt(i));
+            }
+        }
+
+        final Map<String, List<Decoder>> decoders = new HashMap<>();
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            if (codecInfo.isEncoder()) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                final Decoder decoder = newDecoder(codecInfo, type.toLowerCase(Locale.US));
+                List<Decoder> typeDecoders = decoders.get(decoder.mimeType);
+                if (typeDecoders == null) {
+                    typeDecoders = new ArrayList<>();
+                    decoders.put(decoder.mimeType, typeDecoders);
+                }
+                typeDecoders.add(decoder);
+            }
+        }
+        return decoders;
+    }
+
+    private static Decoder newDecoder(MediaCodecInfo codecInfo, String mimeType) {
+        final String name = codecInfo.getName();
+        boolean secure = name.endsWith(".secure");
+        int maxWidth = 0;
+        int maxHeight = 0;
+        int maxFrameRate = 0;
+        int[] maxFrameRates = new int[0];
+        final Map<Integer, Integer> maxLevels = new HashMap<>();
+
+        try {
+            final MediaCodecInfo.CodecCapabilities capabilities = codecInfo.getCapabilitiesForType(mimeType);
+            for (MediaCodecInfo.CodecProfileLevel profileLevel : capabilities.profileLevels) {
+                final Integer level = maxLevels.get(profileLevel.profile);
+                if (level == null || profileLevel.level > level) {
+                    maxLevels.put(profileLevel.profile, profileLevel.level);
+                }
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                secure |= capabilities.isFeatureSupported(MediaCodecInfo.CodecCapabilities.FEATURE_SecurePlayback);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                final int[] videoLimits = getVideoLimits(capabilities);
+                maxWidth = videoLimits[0];
+                maxHeight = videoLimits[1];
+                maxFrameRate = videoLimits[2];
+                maxFrameRates = getMaxFrameRates(capabilities);
+            }
+        } catch (RuntimeException e) {
+            // Some devices throw for types they list.
+            log.w("Failed to get the capabilities of " + name + " for " + mimeType + ": " + e);
+        }
+
+        return new Decoder(name, mimeType, isHardware(name), secure, maxWidth, maxHeight, maxFrameRate, maxFrameRates, maxLevels);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static int[] getVideoLimits(MediaCodecInfo.CodecCapabilities capabilities) {
+        final MediaCodecInfo.VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
+        if (videoCapabilities == null) {
+            return new int[3];
+        }
+        return new int[] {
+                videoCapabilities.getSupportedWidths().getUpper(),
+                videoCapabilities.getSupportedHeights().getUpper(),
+                videoCapabilities.getSupportedFrameRates().getUpper()
+        };
+    }
+
+    // The rate that the decoder declares for each standard size; from Android 6.0, the rate that the
+    // device measured for it, if lower.
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static int[] getMaxFrameRates(MediaCodecInfo.CodecCapabilities capabilities) {
+        final MediaCodecInfo.VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
+        final int[] rates = new int[STANDARD_SIZES.length];
+        if (videoCapabilities == null) {
+            return rates;
+        }
+        for (int i = 0; i < STANDARD_SIZES.length; i++) {
+            final int width = STANDARD_SIZES[i][0];
+            final int height = STANDARD_SIZES[i][1];
+            if (!videoCapabilities.isSizeSupported(width, height)) {
+                rates[i] = -1;
+                continue;
+            }
+            double rate = videoCapabilities.getSupportedFrameRatesFor(width, height).getUpper();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                final Range<Double> achievable = videoCapabilities.getAchievableFrameRatesFor(width, height);
+                if (achievable != null) {
+                    rate = Math.min(rate, achievable.getUpper());
+                }
+            }
+            rates[i] = (int) rate;
+        }
+        return rates;
+    }
+
+    // The platform only tells this from Android 10; the software decoders have well known names.
+    private static boolean isHardware(String name) {
+        final String lowerName = name.toLowerCase(Locale.US);
+        return !(lowerName.startsWith("omx.google.") || lowerName.startsWith("c2.android.") ||
+                lowerName.startsWith("c2.google.") || lowerName.startsWith("omx.ffmpeg.") ||
+                lowerName.contains(".sw.") || lowerName.endsWith(".sw"));
+    }
+
+    private JSONObject toJson() throws JSONException {
+        final JSONArray decoders = new JSONArray();
+        for (List<Decoder> typeDecoders : decodersByMimeType.values()) {
+            for (Decoder decoder : typeDecoders) {
+                final JSONArray maxLevels = new JSONArray();
+                for (Map.Entry<Integer, Integer> entry : decoder.maxLevels.entrySet()) {
+                    maxLevels.put(new JSONArray().put(entry.getKey()).put(entry.getValue()));
+                }
+                final JSONArray maxFrameRates = new JSONArray();
+                for (int rate : decoder.maxFrameRates) {
+                    maxFrameRates.put(rate);
+                }
+                decoders.put(new JSONObject()
+                        .put("name", decoder.name)
+                        .put("mimeType", decoder.mimeType)
+                        .put("hardware", decoder.hardware)
+                        .put("secure", decoder.secure)
+                        .put("maxWidth", decoder.maxWidth)
+                        .put("maxHeight", decoder.maxHeight)
+                        .put("maxFrameRate", decoder.maxFrameRate)
+                        .put("maxFrameRates", maxFrameRates)
+                        .put("maxLevels", maxLevels));
+            }
+        }
+
+        final JSONObject json = new JSONObject()
+                .put("version", FORMAT_VERSION)
+                .put("fingerprint", Build.FINGERPRINT)
+                .put("decoders", decoders);
+        if (hasDrmInfo) {
+            json.put("drm", new JSONObject()
+                    .put("widevineModular", widevineModular)
+                    .put("widevineClassic", widevineClassic)
+                    .put("widevineSecurityLevel", widevineSecurityLevel));
+        }
+        return json;
+    }
+
+    // Returns null if the index was saved by another Android build or format.
+    @Nullable
+    private static PKMediaCapabilities fromJson(JSONObject json) throws JSONException {
+        if (json.optInt("version") != FORMAT_VERSION || !Build.FINGERPRINT.equals(json.optString("fingerprint"))) {
+            return null;
+        }
+
+        final Map<String, List<Decoder>> decodersByMimeType = new HashMap<>();
+        final JSONArray decoders = json.getJSONArray("decoders");
+        for (int i = 0; i < decoders.length(); i++) {
+            final JSONObject decoder = decoders.getJSONObject(i);
+            final Map<Integer, Integer> maxLevels = new HashMap<>();
+            final JSONArray levels = decoder.getJSONArray("maxLevels");
+            for (int j = 0; j < levels.length(); j++) {
+                maxLevels.put(levels.getJSONArray(j).getInt(0), levels.getJSONArray(j).getInt(1));
+            }
+            final JSONArray rates = decoder.getJSONArray("maxFrameRates");
+            final int[] maxFrameRates = new int[rates.length()];
+            for (int j = 0; j < rates.length(); j++) {
+                maxFrameRates[j] = rates.getInt(j);
+            }
+            final String mimeType = decoder.getString("mimeType");
+            List<Decoder> typeDecoders = decodersByMimeType.get(mimeType);
+            if (typeDecoders == null) {
+                typeDecoders = new ArrayList<>();
+                decodersByMimeType.put(mimeType, typeDecoders);
+            }
+            typeDecoders.add(new Decoder(decoder.getString("name"), mimeType, decoder.getBoolean("hardware"),
+                    decoder.getBoolean("secure"), decoder.getInt("maxWidth"), decoder.getInt("maxHeight"),
+                    decoder.getInt("maxFrameRate"), maxFrameRates, maxLevels));
+        }
+
+        final PKMediaCapabilities capabilities = new PKMediaCapabilities(decodersByMimeType);
+        final JSONObject drm = json.optJSONObject("drm");
+        if (drm != null) {
+            capabilities.setDrmInfo(drm.getBoolean("widevineModular"), drm.getBoolean("widevineClassic"),
+                    drm.isNull("widevineSecurityLevel") ? null : drm.getString("widevineSecurityLevel"));
+        }
+        return capabilities;
+    }
+}
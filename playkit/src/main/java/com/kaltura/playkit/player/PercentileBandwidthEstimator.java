@@ -0,0 +1,50 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+/**
+ * Percentile of the throughput of the last samples, weighted by their size. A low percentile
+ * ignores short bursts of high throughput, which keeps the selected quality stable on networks
+ * that fluctuate.
+ */
+public class PercentileBandwidthEstimator implements BandwidthEstimator {
+
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final float DEFAULT_PERCENTILE = 0.5f;
+
+    private final BandwidthSamples samples;
+    private final float percentile;
+
+    public PercentileBandwidthEstimator() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_PERCENTILE);
+    }
+
+    /**
+     * @param windowSize - number of samples to keep.
+     * @param percentile - between 0 and 1, for example 0.5 for the median.
+     */
+    public PercentileBandwidthEstimator(int windowSize, float percentile) {
+        this.samples = new BandwidthSamples(windowSize);
+        this.percentile = percentile;
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+        samples.add(bytes * 8000 / elapsedMs, bytes);
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+        return samples.getWeightedPercentile(percentile);
+    }
+}
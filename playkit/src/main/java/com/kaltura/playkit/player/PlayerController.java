@@ -13,27 +13,42 @@
 package com.kaltura.playkit.player;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.view.Choreographer;
+import android.view.View;
 import android.view.ViewGroup;
 
 import com.kaltura.playkit.Assert;
+import com.kaltura.playkit.MessageBus;
 import com.kaltura.playkit.PKController;
 import com.kaltura.playkit.PKError;
+import com.kaltura.playkit.PKEventRecorder;
 import com.kaltura.playkit.PKEvent;
 import com.kaltura.playkit.PKLog;
 import com.kaltura.playkit.PKMediaConfig;
 import com.kaltura.playkit.PKMediaEntry;
 import com.kaltura.playkit.PKMediaFormat;
 import com.kaltura.playkit.PKMediaSource;
+import com.kaltura.playkit.PKStartupTimeline;
 import com.kaltura.playkit.Player;
 import com.kaltura.playkit.PlayerEngineWrapper;
 import com.kaltura.playkit.PlayerEvent;
+import com.kaltura.playkit.PlayerState;
 import com.kaltura.playkit.ads.AdController;
 import com.kaltura.playkit.player.vr.VRPKMediaEntry;
 import com.kaltura.playkit.utils.Consts;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static com.kaltura.playkit.utils.Consts.MILLISECONDS_MULTIPLIER;
@@ -52,6 +67,10 @@ public class PlayerController implements Player {
     private PKMediaSourceConfig sourceConfig;
     private PlayerSettings playerSettings = new PlayerSettings();
     private final Runnable updateProgressAction = initProgressAction();
+    private final Choreographer.FrameCallback updateProgressFrameCallback = frameTimeNanos -> updateProgress();
+    private boolean isProgressUpdating;     // Between PLAYING and PAUSE/ENDED/ERROR/STOPPED.
+    private boolean isRootViewDetached;     // Only true after the view was attached and then detached.
+    private long progressUpdateIntervalMs = MessageBus.UPDATE_INTERVAL_NONE;  // Interval of the scheduled tick.
 
     private PlayerEngine player;
     private PlayerEngineType currentPlayerType = PlayerEngineType.Unknown;
@@ -62,15 +81,37 @@ public class PlayerController implements Player {
     private String sessionId;
     private UUID playerSessionId = UUID.randomUUID();
 
+    @Nullable private String sourceSelectionReason;
+    // Multi-CDN mode: the race between the equivalent sources, and the failover state.
+    @Nullable private CdnRacer cdnRacer;
+    private boolean isSourceLoaded;     // The engine got the current source; a race winner must be loaded to it.
+    private boolean isSourceReady;      // The engine was ready with the current media; a race winner doesn't replace it anymore.
+    private final Set<PKMediaSource> failedCdnSources = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Long> sourceLoadErrorTimes = new ArrayDeque<>();
+    // The source selection of a media with DRM waits for the DRM initialization, and so do prepare() and the player calls.
+    @Nullable private PKMediaConfig drmWaitingMediaConfig;
+    @Nullable private PKMediaConfig deferredPrepareConfig;
+    private final List<Runnable> deferredPlayerCalls = new ArrayList<>();
     private long targetSeekPosition;
     private boolean isNewEntry = true;
     private boolean isPlayerStopped;
 
     @NonNull private Profiler profiler = ProfilerFactory.get();
+    @Nullable private PKStartupTimeline startupTimeline;    // Until it's sent, at the first frame.
+    private long loadPlayerStartTime = Consts.TIME_UNSET;   // Only reported with the first session.
+    private long playerLoadedTime = Consts.TIME_UNSET;
 
     private PKEvent.RawListener eventListener;
+    @Nullable private MessageBus messageBus;
+    @Nullable private PlayerEvent.PlayheadUpdated lastPlayheadUpdated;
+    @Nullable private AdController adController;
+    @Nullable private MediaPreloader mediaPreloader;
+    private final Map<PKMediaSourceConfig, PKMediaConfig> playlistMediaConfigs = new IdentityHashMap<>();   // Queued entries by their source config.
+    @Nullable private PlaylistItemListener playlistItemListener;
+    @Nullable private PlayerEngine adControllerOwner;   // The engine adController was looked up on.
     private PlayerEngine.EventListener eventTrigger = initEventListener();
     private PlayerEngine.StateChangedListener stateChangedTrigger = initStateChangeListener();
+    private PlayerEngine.PlaylistListener playlistTrigger = this::onPlaylistItemChanged;
     private PlayerEngineWrapper playerEngineWrapper;
 
     public PlayerController(Context context) {
@@ -104,6 +145,24 @@ public class PlayerController implements Player {
         };
         ViewGroup.LayoutParams lp = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
         this.rootPlayerView.setLayoutParams(lp);
+
+        // Stop the playhead loop while the player is off screen. A view that was never attached
+        // (playback without UI) doesn't stop it.
+        this.rootPlayerView.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+                isRootViewDetached = false;
+                if (isProgressUpdating) {
+                    updateProgress();
+                }
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                isRootViewDetached = true;
+                removeProgressCallbacks();
+            }
+        });
     }
 
     private void setVideoSurfaceVisibility(boolean isVisible) {
@@ -159,20 +218,106 @@ public class PlayerController implements Player {
 
     public void prepare(@NonNull PKMediaConfig mediaConfig) {
 
+        if (drmWaitingMediaConfig != null) {
+            log.d("prepare: waiting for the DRM initialization");
+            if (startupTimeline != null) {
+                startupTimeline.mark(PKStartupTimeline.Phase.PREPARE);
+            }
+            deferredPrepareConfig = mediaConfig;
+            return;
+        }
+
         if (sourceConfig == null) {
             log.e("source config not found. Can not prepare source.");
             return;
         }
 
+        if (startupTimeline != null) {
+            startupTimeline.mark(PKStartupTimeline.Phase.PREPARE);
+        }
+
         boolean is360Supported = mediaConfig.getMediaEntry() instanceof VRPKMediaEntry && playerSettings.isVRPlayerEnabled();
         PlayerEngineType incomingPlayerType = PlayerEngineFactory.selectPlayerType(sourceConfig.mediaSource.getMediaFormat(), is360Supported);
 
         switchPlayersIfRequired(incomingPlayerType);
 
+        if (messageBus != null) {
+            messageBus.setEventRecorder(playerSettings.getEventRecorder());
+        }
+
         if (assertPlayerIsNotNull("prepare()")) {
             player.setProfiler(profiler);
             player.load(sourceConfig);
+            isSourceLoaded = true;
+        }
+    }
+
+    @Override
+    public void preload(@NonNull PKMediaConfig mediaConfig) {
+        if (mediaConfig.getMediaEntry() == null) {
+            log.w("preload: media entry is null");
+            return;
+        }
+        PKMediaSource source = SourceSelector.selectSource(mediaConfig.getMediaEntry(), playerSettings.getPreferredMediaFormat());
+        if (source == null) {
+            log.w("preload: no playable source found for entry " + mediaConfig.getMediaEntry().getId());
+            return;
+        }
+
+        if (mediaPreloader == null) {
+            mediaPreloader = new MediaPreloader(context);
+        }
+        mediaPreloader.preload(new PKMediaSourceConfig(mediaConfig, source, playerSettings));
+    }
+
+    @Override
+    public boolean addToPlaylist(@NonNull PKMediaConfig mediaConfig) {
+        if (player == null || mediaConfig.getMediaEntry() == null) {
+            log.w("addToPlaylist: player is not prepared or media entry is null");
+            return false;
+        }
+        PKMediaSource source = SourceSelector.selectSource(mediaConfig.getMediaEntry(), playerSettings.getPreferredMediaFormat());
+        if (source == null) {
+            log.w("addToPlaylist: no playable source found for entry " + mediaConfig.getMediaEntry().getId());
+            return false;
+        }
+        // The queued source must be playable by the current engine.
+        boolean is360Supported = mediaConfig.getMediaEntry() instanceof VRPKMediaEntry && playerSettings.isVRPlayerEnabled();
+        if (PlayerEngineFactory.selectPlayerType(source.getMediaFormat(), is360Supported) != currentPlayerType) {
+            return false;
+        }
+
+        PKMediaSourceConfig itemSourceConfig = new PKMediaSourceConfig(mediaConfig, source, playerSettings);
+        if (!player.addToPlaylist(itemSourceConfig)) {
+            return false;
+        }
+        playlistMediaConfigs.put(itemSourceConfig, mediaConfig);
+        return true;
+    }
+
+    private void onPlaylistItemChanged(PKMediaSourceConfig itemSourceConfig) {
+        PKMediaConfig itemMediaConfig = playlistMediaConfigs.remove(itemSourceConfig);
+        if (itemMediaConfig == null) {
+            return;
         }
+        log.d("onPlaylistItemChanged " + itemMediaConfig.getMediaEntry().getId());
+
+        // Same player session, new media: no STOPPED, no start position.
+        mediaConfig = itemMediaConfig;
+        sourceConfig = itemSourceConfig;
+        sourceSelectionReason = null;
+        lastPlayheadUpdated = null;
+        // The race and the failover state belong to the previous item.
+        cancelCdnRace();
+        profiler.onSetMedia(itemMediaConfig);
+        if (playlistItemListener != null) {
+            playlistItemListener.onPlaylistItemChanged(itemMediaConfig);
+        }
+        eventTrigger.onEvent(PlayerEvent.Type.SOURCE_SELECTED);
+    }
+
+    public void setPlaylistItemListener(@Nullable PlaylistItemListener playlistItemListener) {
+        this.playlistItemListener = playlistItemListener;
     }
 
     /**
@@ -184,12 +329,24 @@ public class PlayerController implements Player {
      */
     public boolean setMedia(PKMediaConfig mediaConfig) {
         log.v("setMedia");
+        final long setMediaTime = SystemClock.elapsedRealtime();
         if (!isNewEntry) {
             isNewEntry = true;
             stop();
         }
 
+        cancelCdnRace();
+        cancelDeferredSelection();
+        isSourceLoaded = false;
+        isSourceReady = false;
         sessionId = generateSessionId();
+        startupTimeline = new PKStartupTimeline(sessionId);
+        startupTimeline.mark(PKStartupTimeline.Phase.SET_MEDIA, setMediaTime);
+        if (loadPlayerStartTime != Consts.TIME_UNSET) {
+            startupTimeline.mark(PKStartupTimeline.Phase.LOAD_PLAYER_STARTED, loadPlayerStartTime);
+            startupTimeline.mark(PKStartupTimeline.Phase.PLAYER_LOADED, playerLoadedTime);
+            loadPlayerStartTime = playerLoadedTime = Consts.TIME_UNSET;
+        }
 
         if (playerSettings.getContentRequestAdapter() != null) {
             playerSettings.getContentRequestAdapter().updateParams(this);
@@ -199,16 +356,161 @@ public class PlayerController implements Player {
         profiler.onSetMedia(mediaConfig);
 
         this.mediaConfig = mediaConfig;
-        PKMediaSource source = SourceSelector.selectSource(mediaConfig.getMediaEntry(), playerSettings.getPreferredMediaFormat());
+        playlistMediaConfigs.clear();
+
+        // Until the DRM support is known, the DRM sources would look unsupported.
+        if (!MediaSupport.isDrmSupportKnown() && hasDrmSources(mediaConfig.getMediaEntry())) {
+            log.d("setMedia: the source is selected when the DRM initialization is done");
+            drmWaitingMediaConfig = mediaConfig;
+            MediaSupport.initializeAsync(context, (supportedDrmSchemes, provisionPerformed, provisionError) -> onDrmInitialized(mediaConfig));
+            return true;
+        }
+
+        return selectSource(mediaConfig);
+    }
+
+    private boolean selectSource(PKMediaConfig mediaConfig) {
+        SourceSelector sourceSelector = new SourceSelector(mediaConfig.getMediaEntry(), playerSettings.getPreferredMediaFormat());
+        PKMediaSource source = sourceSelector.getPreferredSource();
+        sourceSelectionReason = sourceSelector.getSelectionReason();
 
         if (source == null) {
             sendErrorMessage(PKPlayerErrorType.SOURCE_SELECTION_FAILED, "No playable source found for entry", null);
             return false;
         }
 
+        startupTimeline.mark(PKStartupTimeline.Phase.SOURCE_SELECTED);
         initSourceConfig(mediaConfig.getMediaEntry(), source);
         eventTrigger.onEvent(PlayerEvent.Type.SOURCE_SELECTED);
+        // The preferred source is played meanwhile; a faster one replaces it when the race finishes.
+        startCdnRace(sourceSelector.getEquivalentSources());
+
+        return true;
+    }
+
+    private static boolean hasDrmSources(PKMediaEntry mediaEntry) {
+        if (mediaEntry == null || mediaEntry.getSources() == null) {
+            return false;
+        }
+        for (PKMediaSource source : mediaEntry.getSources()) {
+            if (source.hasDrmParams()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Called on the main thread when the DRM initialization that setMedia() waits for is done.
+    private void onDrmInitialized(PKMediaConfig mediaConfig) {
+        if (drmWaitingMediaConfig != mediaConfig) {
+            // Another media was set, or the player was stopped.
+            return;
+        }
+        final PKMediaConfig prepareConfig = deferredPrepareConfig;
+        final List<Runnable> playerCalls = new ArrayList<>(deferredPlayerCalls);
+        cancelDeferredSelection();
+
+        if (!selectSource(mediaConfig) || prepareConfig == null) {
+            return;
+        }
+        prepare(prepareConfig);
+        for (Runnable call : playerCalls) {
+            call.run();
+        }
+    }
+
+    // Player calls made while the source selection waits for the DRM initialization run after the deferred prepare().
+    private boolean deferWhileWaitingForDrm(Runnable call) {
+        if (drmWaitingMediaConfig == null) {
+            return false;
+        }
+        deferredPlayerCalls.add(call);
+        return true;
+    }
+
+    private void cancelDeferredSelection() {
+        drmWaitingMediaConfig = null;
+        deferredPrepareConfig = null;
+        deferredPlayerCalls.clear();
+    }
+
+    // Does nothing if multi-CDN mode is off or there is nothing to race.
+    private void startCdnRace(List<PKMediaSource> candidates) {
+        final MultiCdnSettings multiCdnSettings = playerSettings.getMultiCdnSettings();
+        if (multiCdnSettings == null || candidates.size() < 2) {
+            return;
+        }
+        cdnRacer = new CdnRacer(candidates, PKHttpClientManager.getPlayerClient(playerSettings.crossProtocolRedirectEnabled(), null),
+                multiCdnSettings.getProbeTimeoutMs());
+        cdnRacer.start(this::onCdnRaceFinished);
+    }
+
+    private void onCdnRaceFinished(@Nullable PKMediaSource winner) {
+        if (startupTimeline != null) {
+            startupTimeline.mark(PKStartupTimeline.Phase.CDN_RACE_FINISHED);
+        }
+        if (winner == null || sourceConfig == null || winner == sourceConfig.mediaSource) {
+            return;
+        }
+        if (isSourceReady) {
+            // Switching now would rebuffer the playback; the ranking is still used for the failover.
+            log.d("The CDN race finished after the source was ready, keeping it: " + cdnRacer);
+            return;
+        }
+
+        initSourceConfig(mediaConfig.getMediaEntry(), winner);
+        sourceSelectionReason = "fastest CDN (" + cdnRacer + "); " + sourceSelectionReason;
+        // Before prepare(), the engine gets the winner from there.
+        if (isSourceLoaded && assertPlayerIsNotNull("onCdnRaceFinished()")) {
+            player.load(sourceConfig);
+        }
+        eventTrigger.onEvent(PlayerEvent.Type.SOURCE_SELECTED);
+    }
+
+    private void cancelCdnRace() {
+        if (cdnRacer != null) {
+            cdnRacer.cancel();
+            cdnRacer = null;
+        }
+        failedCdnSources.clear();
+        sourceLoadErrorTimes.clear();
+    }
+
+    // Counts the load errors of the playing source; too many in the window switch to the next ranked source.
+    private void onSourceLoadError() {
+        final MultiCdnSettings multiCdnSettings = playerSettings.getMultiCdnSettings();
+        if (cdnRacer == null || multiCdnSettings == null) {
+            return;
+        }
+        final long now = SystemClock.elapsedRealtime();
+        sourceLoadErrorTimes.addLast(now);
+        while (now - sourceLoadErrorTimes.peekFirst() > multiCdnSettings.getFailoverErrorWindowMs()) {
+            sourceLoadErrorTimes.pollFirst();
+        }
+        if (sourceLoadErrorTimes.size() >= multiCdnSettings.getFailoverErrorCount()) {
+            failoverToNextSource(sourceLoadErrorTimes.size() + " load errors");
+        }
+    }
+
+    // Returns false if there is no source left to switch to.
+    private boolean failoverToNextSource(String cause) {
+        if (cdnRacer == null || !cdnRacer.isFinished() || sourceConfig == null || !assertPlayerIsNotNull("failoverToNextSource()")) {
+            return false;
+        }
+        final PKMediaSource failedSource = sourceConfig.mediaSource;
+        failedCdnSources.add(failedSource);
+        final PKMediaSource nextSource = cdnRacer.getNextSource(failedCdnSources);
+        if (nextSource == null) {
+            return false;
+        }
 
+        log.w("Switching from " + failedSource.getUrl() + " to " + nextSource.getUrl() + " after " + cause);
+        sourceLoadErrorTimes.clear();
+        initSourceConfig(mediaConfig.getMediaEntry(), nextSource);
+        sourceSelectionReason = "failover after " + cause + " (" + cdnRacer + ")";
+        // The engine keeps the position when it loads a new source mid-playback.
+        player.load(sourceConfig);
+        eventTrigger.onEvent(PlayerEvent.Type.SOURCE_SELECTED);
         return true;
     }
 
@@ -239,10 +541,13 @@ public class PlayerController implements Player {
         //Clear previous PlayerEngine.
         if (currentPlayerType != PlayerEngineType.Unknown) {
             removePlayerView();
-            player.destroy();
+            destroyPlayerEngine();
         }
 
         //Initialize new PlayerEngine.
+        if (startupTimeline != null) {
+            startupTimeline.mark(PKStartupTimeline.Phase.ENGINE_CREATION_STARTED);
+        }
         try {
             player = PlayerEngineFactory.initializePlayerEngine(context, incomingPlayerType, playerSettings, rootPlayerView);
             if (playerEngineWrapper != null) {
@@ -267,6 +572,67 @@ public class PlayerController implements Player {
         }
         togglePlayerListeners(true);
         currentPlayerType = incomingPlayerType;
+        if (startupTimeline != null) {
+            startupTimeline.mark(PKStartupTimeline.Phase.ENGINE_CREATED);
+        }
+    }
+
+    /**
+     * Called by the PlayerLoader with the start and end time of {@link com.kaltura.playkit.PlayKitManager#loadPlayer},
+     * to be reported with the startup timeline of the first session.
+     *
+     * @param startRealtimeMs - SystemClock.elapsedRealtime() when loadPlayer() was called.
+     * @param endRealtimeMs   - SystemClock.elapsedRealtime() when the player was loaded.
+     */
+    public void setLoadPlayerTimes(long startRealtimeMs, long endRealtimeMs) {
+        loadPlayerStartTime = startRealtimeMs;
+        playerLoadedTime = endRealtimeMs;
+    }
+
+    private void onStartupPhase(PKStartupTimeline.Phase phase, long realtimeMs) {
+        if (startupTimeline == null) {
+            return;
+        }
+        startupTimeline.mark(phase, realtimeMs);
+        maybeSendStartupTimeline();
+    }
+
+    private void onPlaybackStarted() {
+        if (startupTimeline == null) {
+            return;
+        }
+        startupTimeline.mark(PKStartupTimeline.Phase.PLAYBACK_STARTED);
+        maybeSendStartupTimeline();
+    }
+
+    // The timeline is complete when playback started and the first frame was rendered, in either order;
+    // a video decoder is initialized before the player is ready, so without one there won't be a frame.
+    private void maybeSendStartupTimeline() {
+        if (startupTimeline.getTime(PKStartupTimeline.Phase.PLAYBACK_STARTED) == Consts.TIME_UNSET) {
+            return;
+        }
+        if (startupTimeline.getTime(PKStartupTimeline.Phase.FIRST_FRAME_RENDERED) != Consts.TIME_UNSET ||
+                startupTimeline.getTime(PKStartupTimeline.Phase.VIDEO_DECODER_INITIALIZED) == Consts.TIME_UNSET) {
+            sendStartupTimeline();
+        }
+    }
+
+    private void sendStartupTimeline() {
+        final PKStartupTimeline timeline = startupTimeline;
+        startupTimeline = null;
+        log.d("Startup timeline: " + timeline);
+        profiler.onStartupTimeline(timeline);
+        if (eventListener != null) {
+            eventListener.onEvent(new PlayerEvent.StartupTimeline(timeline));
+        }
+    }
+
+    // ExoPlayer engines go back to the PlayerEnginePool when it has room for them.
+    private void destroyPlayerEngine() {
+        if (player instanceof ExoPlayerWrapper && PlayerEnginePool.recycle((ExoPlayerWrapper) player, context, playerSettings)) {
+            return;
+        }
+        player.destroy();
     }
 
     private void addPlayerView() {
@@ -282,14 +648,23 @@ public class PlayerController implements Player {
     @Override
     public void destroy() {
         log.v("destroy");
+        cancelCdnRace();
+        cancelDeferredSelection();
         if (assertPlayerIsNotNull("destroy()")) {
+            cancelUpdateProgress();
             if (playerEngineView != null) {
                 rootPlayerView.removeView(playerEngineView);
             }
-            player.destroy();
+            destroyPlayerEngine();
             togglePlayerListeners(false);
         }
+        if (mediaPreloader != null) {
+            mediaPreloader.cancel();
+        }
         player = null;
+        adController = null;
+        adControllerOwner = null;
+        lastPlayheadUpdated = null;
         mediaConfig = null;
         eventListener = null;
         currentPlayerType = PlayerEngineType.Unknown;
@@ -298,6 +673,8 @@ public class PlayerController implements Player {
     @Override
     public void stop() {
         log.v("stop");
+        cancelCdnRace();
+        cancelDeferredSelection();
         if (eventListener != null && !isPlayerStopped) {
             PlayerEvent event = new PlayerEvent.Generic(PlayerEvent.Type.STOPPED);
             cancelUpdateProgress();
@@ -380,6 +757,9 @@ public class PlayerController implements Player {
 
     public void seekTo(long position) {
         log.v("seek to " + position);
+        if (deferWhileWaitingForDrm(() -> seekTo(position))) {
+            return;
+        }
         if (assertPlayerIsNotNull("seekTo()")) {
             targetSeekPosition = position;
             player.seekTo(position);
@@ -388,6 +768,9 @@ public class PlayerController implements Player {
 
     public void play() {
         log.v("play");
+        if (deferWhileWaitingForDrm(this::play)) {
+            return;
+        }
         if (assertPlayerIsNotNull("play()")) {
             player.play();
         }
@@ -395,6 +778,9 @@ public class PlayerController implements Player {
 
     public void pause() {
         log.v("pause");
+        if (deferWhileWaitingForDrm(this::pause)) {
+            return;
+        }
         if (assertPlayerIsNotNull("pause()")) {
             player.pause();
         }
@@ -403,6 +789,9 @@ public class PlayerController implements Player {
     @Override
     public void replay() {
         log.v("replay");
+        if (deferWhileWaitingForDrm(this::replay)) {
+            return;
+        }
         if (assertPlayerIsNotNull("replay()")) {
             player.replay();
         }
@@ -411,6 +800,9 @@ public class PlayerController implements Player {
     @Override
     public void setVolume(float volume) {
         log.v("setVolume");
+        if (deferWhileWaitingForDrm(() -> setVolume(volume))) {
+            return;
+        }
         if (assertPlayerIsNotNull("setVolume()")) {
             player.setVolume(volume);
         }
@@ -431,6 +823,7 @@ public class PlayerController implements Player {
             if (enable) {
                 player.setEventListener(eventTrigger);
                 player.setStateChangedListener(stateChangedTrigger);
+                player.setPlaylistListener(playlistTrigger);
                 player.setAnalyticsListener(new PlayerEngine.AnalyticsListener() {
                     @Override
                     public void onDroppedFrames(long droppedVideoFrames, long droppedVideoFramesPeriod, long totalDroppedVideoFrames) {
@@ -442,8 +835,16 @@ public class PlayerController implements Player {
                         eventListener.onEvent(new PlayerEvent.BytesLoaded(bytesLoaded, totalBytesLoaded));
                     }
 
+                    @Override
+                    public void onStartupPhase(PKStartupTimeline.Phase phase, long realtimeMs) {
+                        PlayerController.this.onStartupPhase(phase, realtimeMs);
+                    }
+
                     @Override
                     public void onLoadError(IOException error, boolean wasCanceled) {
+                        if (!wasCanceled) {
+                            onSourceLoadError();
+                        }
                         String errorStr =  "onLoadError Player Load error: " + PKPlayerErrorType.LOAD_ERROR;
                         log.e(errorStr);
                         PKError loadError = new PKError(PKPlayerErrorType.LOAD_ERROR, PKError.Severity.Recoverable, errorStr, error);
@@ -453,6 +854,7 @@ public class PlayerController implements Player {
             } else {
                 player.setEventListener(null);
                 player.setStateChangedListener(null);
+                player.setPlaylistListener(null);
                 player.setAnalyticsListener(null);
             }
         }
@@ -522,7 +924,7 @@ public class PlayerController implements Player {
         }
         if (assertPlayerIsNotNull("onApplicationResumed()")) {
             player.restore();
-            updateProgress();
+            startUpdateProgress();
         }
         togglePlayerListeners(true);
         prepare(mediaConfig);
@@ -539,6 +941,9 @@ public class PlayerController implements Player {
     @Override
     public void changeTrack(String uniqueId) {
         log.v("changeTrack");
+        if (deferWhileWaitingForDrm(() -> changeTrack(uniqueId))) {
+            return;
+        }
         if (assertPlayerIsNotNull("changeTrack()")) {
             player.changeTrack(uniqueId);
         }
@@ -569,6 +974,9 @@ public class PlayerController implements Player {
     @Override
     public void setPlaybackRate(float rate) {
         log.v("setPlaybackRate");
+        if (deferWhileWaitingForDrm(() -> setPlaybackRate(rate))) {
+            return;
+        }
         if (assertPlayerIsNotNull("setPlaybackRate()")) {
             player.setPlaybackRate(rate);
         }
@@ -638,28 +1046,101 @@ public class PlayerController implements Player {
         }
     }
 
-    private void updateProgress() {
+    private void startUpdateProgress() {
+        isProgressUpdating = true;
+        updateProgress();
+    }
 
-        long position;
-        long duration;
+    private void updateProgress() {
 
         if (player == null || player.getView() == null) {
             return;
         }
 
-        position = player.getCurrentPosition();
-        duration = player.getDuration();
-        AdController adController = player.getController(AdController.class);
-        if (adController == null || (adController != null && !adController.isAdDisplayed())) {
+        if (eventListener != null && hasPlayheadListeners()) {
+            sendPlayheadUpdated();
+        }
+
+        scheduleProgressUpdate(getProgressUpdateInterval());
+    }
+
+    // Cancel any pending update and schedule a new one if necessary. The loop runs at the shortest
+    // interval that the PLAYHEAD_UPDATED listeners asked for, and idles while nobody listens.
+    private void scheduleProgressUpdate(long intervalMs) {
+        removeProgressCallbacks();
+
+        if (!isProgressUpdating || isRootViewDetached || intervalMs == MessageBus.UPDATE_INTERVAL_NONE ||
+                player == null || player.getView() == null) {
+            return;
+        }
+
+        progressUpdateIntervalMs = intervalMs;
+        if (intervalMs <= Consts.PLAYHEAD_UPDATE_FRAME_MILI) {
+            Choreographer.getInstance().postFrameCallback(updateProgressFrameCallback);
+        } else {
+            player.getView().postDelayed(updateProgressAction, intervalMs);
+        }
+    }
+
+    private long getProgressUpdateInterval() {
+        if (messageBus == null) {
+            return Consts.DEFAULT_PLAYHEAD_UPDATE_MILI;
+        }
+        return messageBus.getUpdateInterval(PlayerEvent.Type.PLAYHEAD_UPDATED, PlayerEvent.PlayheadUpdated.class, Consts.DEFAULT_PLAYHEAD_UPDATE_MILI);
+    }
+
+    private void onSubscriptionsChanged() {
+        if (!isProgressUpdating) {
+            return;
+        }
+        // Only reschedule if the rate changed, so that frequent listener changes don't delay the ticks.
+        final long intervalMs = getProgressUpdateInterval();
+        if (intervalMs != progressUpdateIntervalMs) {
+            scheduleProgressUpdate(intervalMs);
+        }
+    }
+
+    private void sendPlayheadUpdated() {
+        long position = player.getCurrentPosition();
+        long duration = player.getDuration();
+        AdController adController = getAdController();
+        if (adController != null && adController.isAdDisplayed()) {
+            return;
+        }
+
+        if (log.isLoggable(PKLog.Level.verbose)) {
             log.v("updateProgress new position/duration = " + position + "/" + duration);
-            if (eventListener != null && position > 0 && duration > 0) {
-                eventListener.onEvent(new PlayerEvent.PlayheadUpdated(position, duration));
+        }
+
+        if (position > 0 && duration > 0) {
+            // Events are immutable and may be kept by listeners, so they are not recycled; but while the
+            // position doesn't move (buffering, ads, paused live) the previous snapshot is sent again.
+            PlayerEvent.PlayheadUpdated event = lastPlayheadUpdated;
+            if (event == null || event.position != position || event.duration != duration) {
+                event = new PlayerEvent.PlayheadUpdated(position, duration);
+                lastPlayheadUpdated = event;
             }
+            eventListener.onEvent(event);
         }
-        // Cancel any pending updates and schedule a new one if necessary.
-        player.getView().removeCallbacks(updateProgressAction);
-        player.getView().postDelayed(updateProgressAction, Consts.DEFAULT_PLAYHEAD_UPDATE_MILI);
+    }
+
+    private boolean hasPlayheadListeners() {
+        return hasListeners(PlayerEvent.Type.PLAYHEAD_UPDATED, PlayerEvent.PlayheadUpdated.class);
+    }
 
+    // Used to skip building events, and the engine queries behind them, when nobody would get them.
+    private boolean hasListeners(PlayerEvent.Type eventType, Class<? extends PKEvent> eventClass) {
+        return messageBus == null || messageBus.hasListeners(eventType, eventClass);
+    }
+
+    // The AdController of an engine doesn't change, so it is only looked up when the engine changes.
+    @Nullable
+    private AdController getAdController() {
+        if (adControllerOwner != player) {
+            adControllerOwner = player;
+            adController = player != null ? player.getController(AdController.class) : null;
+        }
+        return adController;
     }
 
     private Runnable initProgressAction() {
@@ -667,6 +1148,13 @@ public class PlayerController implements Player {
     }
 
     private void cancelUpdateProgress() {
+        isProgressUpdating = false;
+        removeProgressCallbacks();
+    }
+
+    private void removeProgressCallbacks() {
+        progressUpdateIntervalMs = MessageBus.UPDATE_INTERVAL_NONE;
+        Choreographer.getInstance().removeFrameCallback(updateProgressFrameCallback);
         if (player != null && player.getView() != null) {
             player.getView().removeCallbacks(updateProgressAction);
         }
@@ -676,14 +1164,27 @@ public class PlayerController implements Player {
         this.eventListener = eventListener;
     }
 
+    public void setMessageBus(MessageBus messageBus) {
+        this.messageBus = messageBus;
+        messageBus.setSubscriptionsListener(this::onSubscriptionsChanged);
+        if (profiler != Profiler.NOOP) {
+            messageBus.setSlowListenerCallback(MessageBus.DEFAULT_SLOW_LISTENER_THRESHOLD_MS, profiler::onSlowListener);
+        }
+    }
+
     private PlayerEngine.EventListener initEventListener() {
         return eventType -> {
+            final PKEventRecorder eventRecorder = playerSettings.getEventRecorder();
+            if (eventRecorder != null) {
+                eventRecorder.record(PKEventRecorder.SOURCE_ENGINE, eventType);
+            }
+
             if (eventListener != null) {
 
                 PKEvent event;
                 switch (eventType) {
                     case PLAYING:
-                        updateProgress();
+                        startUpdateProgress();
                         event = new PlayerEvent.Generic(eventType);
                         break;
                     case PAUSE:
@@ -712,12 +1213,18 @@ public class PlayerController implements Player {
                         }
                         break;
                     case TRACKS_AVAILABLE:
+                        if (!hasListeners(eventType, PlayerEvent.TracksAvailable.class)) {
+                            return;
+                        }
                         event = new PlayerEvent.TracksAvailable(player.getPKTracks());
                         break;
                     case VOLUME_CHANGED:
                         event = new PlayerEvent.VolumeChanged(player.getVolume());
                         break;
                     case PLAYBACK_INFO_UPDATED:
+                        if (!hasListeners(eventType, PlayerEvent.PlaybackInfoUpdated.class)) {
+                            return;
+                        }
                         event = new PlayerEvent.PlaybackInfoUpdated(player.getPlaybackInfo());
                         break;
                     case ERROR:
@@ -725,10 +1232,17 @@ public class PlayerController implements Player {
                             log.e("can not send error event");
                             return;
                         }
+                        if (player.getCurrentError().errorType == PKPlayerErrorType.SOURCE_ERROR && failoverToNextSource("a source error")) {
+                            log.w("Source error, switched to the next source: " + player.getCurrentError().message);
+                            return;
+                        }
                         event = new PlayerEvent.Error(player.getCurrentError());
                         cancelUpdateProgress();
                         break;
                     case METADATA_AVAILABLE:
+                        if (!hasListeners(eventType, PlayerEvent.MetadataAvailable.class)) {
+                            return;
+                        }
                         if (player.getMetadata() == null || player.getMetadata().isEmpty()) {
                             log.w("METADATA_AVAILABLE event received, but player engine have no metadata.");
                             return;
@@ -736,12 +1250,15 @@ public class PlayerController implements Player {
                         event = new PlayerEvent.MetadataAvailable(player.getMetadata());
                         break;
                     case SOURCE_SELECTED:
-                        event = new PlayerEvent.SourceSelected(sourceConfig.mediaSource);
+                        event = new PlayerEvent.SourceSelected(sourceConfig.mediaSource, sourceSelectionReason);
                         break;
                     case SEEKING:
                         event = new PlayerEvent.Seeking(targetSeekPosition);
                         break;
                     case VIDEO_TRACK_CHANGED:
+                        if (!hasListeners(eventType, PlayerEvent.VideoTrackChanged.class)) {
+                            return;
+                        }
                         VideoTrack videoTrack = (VideoTrack) player.getLastSelectedTrack(Consts.TRACK_TYPE_VIDEO);
                         if (videoTrack == null) {
                             return;
@@ -749,6 +1266,9 @@ public class PlayerController implements Player {
                         event = new PlayerEvent.VideoTrackChanged(videoTrack);
                         break;
                     case AUDIO_TRACK_CHANGED:
+                        if (!hasListeners(eventType, PlayerEvent.AudioTrackChanged.class)) {
+                            return;
+                        }
                         AudioTrack audioTrack = (AudioTrack) player.getLastSelectedTrack(Consts.TRACK_TYPE_AUDIO);
                         if (audioTrack == null) {
                             return;
@@ -756,6 +1276,9 @@ public class PlayerController implements Player {
                         event = new PlayerEvent.AudioTrackChanged(audioTrack);
                         break;
                     case TEXT_TRACK_CHANGED:
+                        if (!hasListeners(eventType, PlayerEvent.TextTrackChanged.class)) {
+                            return;
+                        }
                         TextTrack textTrack = (TextTrack) player.getLastSelectedTrack(Consts.TRACK_TYPE_TEXT);
                         if (textTrack == null) {
                             return;
@@ -777,6 +1300,10 @@ public class PlayerController implements Player {
 
                 eventListener.onEvent(event);
             }
+
+            if (eventType == PlayerEvent.Type.PLAYING) {
+                onPlaybackStarted();
+            }
         };
     }
 
@@ -786,12 +1313,22 @@ public class PlayerController implements Player {
 
     private PlayerEngine.StateChangedListener initStateChangeListener() {
         return (oldState, newState) -> {
+            if (newState == PlayerState.READY) {
+                isSourceReady = true;
+            }
             if (eventListener != null) {
                 eventListener.onEvent(new PlayerEvent.StateChanged(newState, oldState));
             }
         };
     }
 
+    /**
+     * Called when playback moves to an entry that was queued with {@link #addToPlaylist(PKMediaConfig)}.
+     */
+    public interface PlaylistItemListener {
+        void onPlaylistItemChanged(PKMediaConfig mediaConfig);
+    }
+
     public void setPlayerEngineWrapper(PlayerEngineWrapper playerEngineWrapper) {
         this.playerEngineWrapper = playerEngineWrapper;
     }
@@ -14,6 +14,7 @@ package com.kaltura.playkit.player;
 
 import com.kaltura.playkit.PKController;
 import com.kaltura.playkit.PKError;
+import com.kaltura.playkit.PKStartupTimeline;
 import com.kaltura.playkit.PlaybackInfo;
 import com.kaltura.playkit.PlayerEvent;
 import com.kaltura.playkit.PlayerState;
@@ -267,10 +268,29 @@ public interface PlayerEngine {
      */
     void onOrientationChanged();
 
+    /**
+     * Queue a source to be played after the loaded one without a gap, keeping the decoders and buffers.
+     *
+     * @param mediaSourceConfig - the source to queue.
+     * @return - true if the source was queued, false if the engine can't play it gapless.
+     */
+    default boolean addToPlaylist(PKMediaSourceConfig mediaSourceConfig) { return false; }
+
+    /**
+     * Set the listener that is called when playback moves to a queued source.
+     *
+     * @param playlistListener - the listener, or null to remove it.
+     */
+    default void setPlaylistListener(PlaylistListener playlistListener) {}
+
     interface EventListener {
         void onEvent(PlayerEvent.Type event);
     }
 
+    interface PlaylistListener {
+        void onPlaylistItemChanged(PKMediaSourceConfig mediaSourceConfig);
+    }
+
     interface StateChangedListener {
         void onStateChanged(PlayerState oldState, PlayerState newState);
     }
@@ -279,5 +299,7 @@ public interface PlayerEngine {
         void onDroppedFrames(long droppedVideoFrames, long droppedVideoFramesPeriod, long totalDroppedVideoFrames);
         void onBytesLoaded(long bytesLoaded, long totalBytesLoaded);
         void onLoadError(IOException error, boolean wasCanceled);
+        // First occurrence of a startup phase since the media was loaded, at SystemClock.elapsedRealtime().
+        default void onStartupPhase(PKStartupTimeline.Phase phase, long realtimeMs) {}
     }
 }
@@ -50,6 +50,10 @@ class PlayerEngineFactory {
                 return vrPlayerFactory.newInstance(context, exoWrapper);
 
             default:
+                ExoPlayerWrapper pooledEngine = PlayerEnginePool.acquire(context, playerSettings, rootPlayerView);
+                if (pooledEngine != null) {
+                    return pooledEngine;
+                }
                 return new ExoPlayerWrapper(context, playerSettings, rootPlayerView);
         }
     }
@@ -0,0 +1,162 @@
+/*
+ * ============================================================================
+ * Copyright (C) 2019 Kaltura Inc.
+ *
+ * Licensed under the AGPLv3 license, unless a different license for a
+ * particular library is specified in the applicable library path.
+ *
+ * You may obtain a copy of the License at
+ * https://www.gnu.org/licenses/agpl-3.0.html
+ * ============================================================================
+ */
+
+package com.kaltura.playkit.player;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.kaltura.playkit.PKLog;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of pre-created ExoPlayer engines, for UIs that create and destroy many players, like a
+ * vertical feed with a player per cell. A pooled engine already has its ExoPlayer instance,
+ * renderers, track selector and view; a new player takes one instead of building them, and gives
+ * it back with a cleared state when it's destroyed.
+ * <p>
+ * The pool only serves players that are created with the same context and with the same settings
+ * that are baked into the engine when it's created (load control buffers, clear lead, initial
+ * bitrate estimate, bandwidth estimator type, cross protocol redirect). Other players create their own engine as usual.
+ * Engines of players that use an ads or VR engine are not pooled.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class PlayerEnginePool {
+
+    private static final PKLog log = PKLog.get("PlayerEnginePool");
+
+    private static final Deque<ExoPlayerWrapper> idleEngines = new ArrayDeque<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Nullable private static Context poolContext;
+    @Nullable private static String poolConfigKey;
+    private static int capacity;
+    private static int pendingCount;
+
+    /**
+     * Keep the given number of engines ready for players that use these settings. The engines are
+     * created one per main loop message, so that prewarming doesn't block a frame for long.
+     * Calling it again with other settings or another context clears the pool first.
+     *
+     * @param context  - the context that the players are created with.
+     * @param settings - settings of the players that will use the pool.
+     * @param size     - number of idle engines to keep.
+     */
+    public static void prewarm(@NonNull Context context, @NonNull PlayerSettings settings, int size) {
+        final String configKey = configKey(settings);
+        if (context != poolContext || !configKey.equals(poolConfigKey)) {
+            clear();
+            poolContext = context;
+            poolConfigKey = configKey;
+        }
+        capacity = Math.max(0, size);
+
+        while (idleEngines.size() > capacity) {
+            idleEngines.pollLast().destroy();
+        }
+        final PlayerSettings engineSettings = copyEngineSettings(settings);
+        for (int i = idleEngines.size() + pendingCount; i < capacity; i++) {
+            pendingCount++;
+            mainHandler.post(() -> {
+                pendingCount--;
+                if (poolContext != context || idleEngines.size() >= capacity) {
+                    return;
+                }
+                final ExoPlayerWrapper engine = new ExoPlayerWrapper(context, engineSettings, null);
+                engine.prewarm();
+                idleEngines.addLast(engine);
+            });
+        }
+    }
+
+    /**
+     * Destroy the idle engines and stop pooling. Call it when the screen that uses the pool is destroyed.
+     */
+    public static void clear() {
+        mainHandler.removeCallbacksAndMessages(null);
+        pendingCount = 0;
+        capacity = 0;
+        for (ExoPlayerWrapper engine : idleEngines) {
+            engine.destroy();
+        }
+        idleEngines.clear();
+        poolContext = null;
+        poolConfigKey = null;
+    }
+
+    /**
+     * @return the number of engines that are ready to be handed out.
+     */
+    public static int getIdleCount() {
+        return idleEngines.size();
+    }
+
+    // Called by PlayerEngineFactory. Returns null if there is no matching engine.
+    @Nullable
+    static ExoPlayerWrapper acquire(Context context, PlayerSettings settings, PlayerView rootPlayerView) {
+        if (idleEngines.isEmpty() || context != poolContext || !configKey(settings).equals(poolConfigKey)) {
+            return null;
+        }
+        final ExoPlayerWrapper engine = idleEngines.pollFirst();
+        engine.rebind(settings, rootPlayerView);
+        log.d("Handing out a pooled engine, " + idleEngines.size() + " left");
+        return engine;
+    }
+
+    // Called by PlayerController instead of destroying an engine. Returns false if the caller should destroy it.
+    static boolean recycle(ExoPlayerWrapper engine, Context context, PlayerSettings settings) {
+        if (idleEngines.size() >= capacity || context != poolContext || !engine.isPrewarmed() ||
+                !configKey(settings).equals(poolConfigKey) || idleEngines.contains(engine)) {
+            return false;
+        }
+        engine.recycle();
+        engine.rebind(copyEngineSettings(settings), null);
+        idleEngines.addLast(engine);
+        log.d("Took back an engine, " + idleEngines.size() + " idle");
+        return true;
+    }
+
+    // Idle engines don't keep the settings object of the player that returned them.
+    private static PlayerSettings copyEngineSettings(PlayerSettings settings) {
+        final PlayerSettings engineSettings = new PlayerSettings();
+        engineSettings.setPlayerBuffers(settings.getLoadControlBuffers());
+        engineSettings.allowClearLead(settings.allowClearLead());
+        engineSettings.setAllowCrossProtocolRedirect(settings.crossProtocolRedirectEnabled());
+        engineSettings.setABRSettings(settings.getAbrSettings());
+        engineSettings.useTextureView(settings.useTextureView());
+        engineSettings.setSecureSurface(settings.isSurfaceSecured());
+        return engineSettings;
+    }
+
+    // The settings that the engine uses when it creates the ExoPlayer instance.
+    private static String configKey(PlayerSettings settings) {
+        final LoadControlBuffers buffers = settings.getLoadControlBuffers();
+        return buffers.getMinPlayerBufferMs() + "/" + buffers.getMaxPlayerBufferMs() + "/" +
+                buffers.getMinBufferAfterInteractionMs() + "/" + buffers.getMinBufferAfterReBufferMs() + "/" +
+                buffers.getBackBufferDurationMs() + "/" + buffers.getRetainBackBufferFromKeyframe() + "/" +
+                buffers.getAllowedVideoJoiningTimeMs() + "/" + buffers.getMaxPlayerBufferBytes() + "/" +
+                buffers.isMemoryAwareBuffering() + "/" + settings.allowClearLead() + "/" +
+                settings.crossProtocolRedirectEnabled() + "/" + settings.getAbrSettings().getInitialBitrateEstimate() + "/" +
+                estimatorType(settings.getAbrSettings().getBandwidthEstimatorFactory());
+    }
+
+    // Pooled engines are only handed to players that use the same kind of estimator.
+    private static String estimatorType(@Nullable BandwidthEstimator.Factory factory) {
+        return factory != null ? factory.getClass().getName() : "default";
+    }
+}
@@ -12,6 +12,7 @@
 
 package com.kaltura.playkit.player;
 
+import com.kaltura.playkit.PKEventRecorder;
 import com.kaltura.playkit.PKMediaFormat;
 import com.kaltura.playkit.PKRequestParams;
 import com.kaltura.playkit.PKTrackConfig;
@@ -31,6 +32,10 @@ public class PlayerSettings implements Player.Settings {
     private SubtitleStyleSettings subtitleStyleSettings;
     private PKAspectRatioResizeMode resizeMode = PKAspectRatioResizeMode.fit;
     private ABRSettings abrSettings = new ABRSettings();
+    private PKEventRecorder eventRecorder;
+    private MediaCacheSettings mediaCacheSettings;
+    private Http2Settings http2Settings;
+    private MultiCdnSettings multiCdnSettings;
 
 
     private PKTrackConfig preferredTextTrackConfig;
@@ -110,6 +115,22 @@ public class PlayerSettings implements Player.Settings {
         return resizeMode;
     }
 
+    public PKEventRecorder getEventRecorder() {
+        return eventRecorder;
+    }
+
+    public MediaCacheSettings getMediaCacheSettings() {
+        return mediaCacheSettings;
+    }
+
+    public Http2Settings getHttp2Settings() {
+        return http2Settings;
+    }
+
+    public MultiCdnSettings getMultiCdnSettings() {
+        return multiCdnSettings;
+    }
+
     @Override
     public Player.Settings setVRPlayerEnabled(boolean vrPlayerEnabled) {
         this.vrPlayerEnabled = vrPlayerEnabled;
@@ -212,4 +233,28 @@ public class PlayerSettings implements Player.Settings {
         this.resizeMode = resizeMode;
         return this;
     }
+
+    @Override
+    public Player.Settings setEventRecorder(PKEventRecorder eventRecorder) {
+        this.eventRecorder = eventRecorder;
+        return this;
+    }
+
+    @Override
+    public Player.Settings setMediaCacheSettings(MediaCacheSettings mediaCacheSettings) {
+        this.mediaCacheSettings = mediaCacheSettings;
+        return this;
+    }
+
+    @Override
+    public Player.Settings setHttp2Settings(Http2Settings http2Settings) {
+        this.http2Settings = http2Settings;
+        return this;
+    }
+
+    @Override
+    public Player.Settings setMultiCdnSettings(MultiCdnSettings multiCdnSettings) {
+        this.multiCdnSettings = multiCdnSettings;
+        return this;
+    }
 }
@@ -3,7 +3,9 @@ package com.kaltura.playkit.player;
 import android.support.annotation.NonNull;
 
 import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.kaltura.playkit.PKEvent;
 import com.kaltura.playkit.PKMediaConfig;
+import com.kaltura.playkit.PKStartupTimeline;
 
 import okhttp3.EventListener;
 
@@ -22,6 +24,8 @@ public abstract class Profiler {
     public void onPlayRequested() {/*NOOP*/}
     public void onSessionFinished() {/*NOOP*/}
     public void onDurationChanged(long duration) {/*NOOP*/}
+    public void onStartupTimeline(PKStartupTimeline timeline) {/*NOOP*/}
+    public void onSlowListener(PKEvent.Listener listener, PKEvent event, long durationNanos) {/*NOOP*/}
 
     public EventListener.Factory getOkListenerFactory() {return null;}
     public AnalyticsListener getExoAnalyticsListener() {return null;}
@@ -14,6 +14,7 @@ package com.kaltura.playkit.player;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 
 import com.kaltura.playkit.LocalAssetsManager;
 import com.kaltura.playkit.PKDrmParams;
@@ -23,7 +24,9 @@ import com.kaltura.playkit.PKMediaFormat;
 import com.kaltura.playkit.PKMediaSource;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Created by Noam Tamim @ Kaltura on 29/11/2016.
@@ -32,24 +35,65 @@ import java.util.List;
 class SourceSelector {
 
     private static final PKLog log = PKLog.get("SourceSelector");
+
+    // Profile constants of MediaCodecInfo.CodecProfileLevel; the VP9 and AV1 ones need a newer SDK.
+    private static final int AVC_PROFILE_BASELINE = 0x01;
+    private static final int AVC_PROFILE_MAIN = 0x02;
+    private static final int AVC_PROFILE_HIGH = 0x08;
+    private static final int HEVC_PROFILE_MAIN = 0x01;
+    private static final int HEVC_PROFILE_MAIN10 = 0x02;
+    private static final int VP9_PROFILE_0 = 0x01;
+    private static final int AV1_PROFILE_MAIN8 = 0x1;
+    private static final int AV1_PROFILE_MAIN10 = 0x2;
+
     private final PKMediaEntry mediaEntry;
     private final PKMediaFormat preferredMediaFormat;
+    @Nullable private String selectionReason;
+    private List<Candidate> rankedCandidates = Collections.emptyList();
 
-    public SourceSelector(PKMediaEntry mediaEntry, PKMediaFormat preferredMdieaFormat) {
-        this.mediaEntry = mediaEntry;
-        this.preferredMediaFormat = preferredMdieaFormat;
+    /**
+     * How well the device decodes the video of a source, from worst to best. Sources without codec
+     * hints, or without the capabilities index, are {@link #UNKNOWN} and rank like {@link #HARDWARE},
+     * so that only the format priority decides between them.
+     */
+    private enum CodecSupport {
+        NO_DECODER(0),
+        EXCEEDS_DECODER_LIMITS(1),
+        SOFTWARE(2),
+        HARDWARE(3),
+        UNKNOWN(3);
+
+        final int rank;
+
+        CodecSupport(int rank) {
+            this.rank = rank;
+        }
     }
 
-    @Nullable
-    private PKMediaSource sourceByFormat(PKMediaFormat format) {
-        if (mediaEntry != null && mediaEntry.getSources() != null) {
-            for (PKMediaSource source : mediaEntry.getSources()) {
-                if (source.getMediaFormat() == format) {
-                    return source;
-                }
-            }
+    private static class Candidate {
+        final PKMediaSource source;
+        final int formatRank;   // Lower is better.
+        final int entryIndex;
+        CodecSupport codecSupport = CodecSupport.UNKNOWN;
+        int codecEfficiency;    // Higher is better, only compared between known codecs.
+        String details = "no codec hints";
+
+        Candidate(PKMediaSource source, int formatRank, int entryIndex) {
+            this.source = source;
+            this.formatRank = formatRank;
+            this.entryIndex = entryIndex;
         }
-        return null;
+
+        @Override
+        public String toString() {
+            return source.getMediaFormat() + (source.getId() != null ? "[" + source.getId() + "]" : "") + ": " +
+                    codecSupport.name().toLowerCase(Locale.US) + " (" + details + ")";
+        }
+    }
+
+    public SourceSelector(PKMediaEntry mediaEntry, PKMediaFormat preferredMdieaFormat) {
+        this.mediaEntry = mediaEntry;
+        this.preferredMediaFormat = preferredMdieaFormat;
     }
 
     @Nullable
@@ -59,34 +103,257 @@ class SourceSelector {
         // because it is only one.
         PKMediaSource localMediaSource = getLocalSource();
         if (localMediaSource != null) {
+            selectionReason = "local source";
             return localMediaSource;
         }
 
-        // Default preference: DASH, HLS, WVM, MP4, MP3
+        // Default preference: DASH, HLS, WVM, MP4, MP3; then the sources whose video codec the
+        // device decodes best rank first.
 
         List<PKMediaFormat> formatsPriorityList = getFormatsPriorityList();
+        List<Candidate> candidates = new ArrayList<>();
+        List<PKMediaSource> sources = mediaEntry != null ? mediaEntry.getSources() : null;
+        if (sources != null) {
+            for (int i = 0; i < sources.size(); i++) {
+                PKMediaSource source = sources.get(i);
+                int formatRank = formatsPriorityList.indexOf(source.getMediaFormat());
+                if (formatRank < 0 || !isDrmSupported(source)) {
+                    continue;
+                }
+                candidates.add(new Candidate(source, formatRank, i));
+            }
+        }
 
-        for (PKMediaFormat format : formatsPriorityList) {
-            PKMediaSource source = sourceByFormat(format);
-            if (source == null) {
-                continue;
+        if (candidates.isEmpty()) {
+            selectionReason = "no source with a supported format and DRM scheme" +
+                    (MediaSupport.isDrmSupportKnown() ? "" : " (the DRM initialization is not done yet)");
+            return null;
+        }
+
+        final PKMediaCapabilities capabilities = PKMediaCapabilities.get();
+        if (capabilities != null) {
+            for (Candidate candidate : candidates) {
+                scoreCodecs(candidate, capabilities);
             }
+        }
 
-            List<PKDrmParams> drmParams = source.getDrmData();
-            if (drmParams != null && !drmParams.isEmpty()) {
-                for (PKDrmParams params : drmParams) {
-                    if (params.isSchemeSupported()) {
-                        return source;
-                    }
+        Collections.sort(candidates, (c1, c2) -> {
+            if (c1.codecSupport.rank != c2.codecSupport.rank) {
+                return c2.codecSupport.rank - c1.codecSupport.rank;
+            }
+            if (c1.formatRank != c2.formatRank) {
+                return c1.formatRank - c2.formatRank;
+            }
+            if (c1.codecSupport != CodecSupport.UNKNOWN && c2.codecSupport != CodecSupport.UNKNOWN &&
+                    c1.codecEfficiency != c2.codecEfficiency) {
+                return c2.codecEfficiency - c1.codecEfficiency;
+            }
+            return c1.entryIndex - c2.entryIndex;
+        });
+
+        rankedCandidates = candidates;
+        Candidate selected = candidates.get(0);
+        selectionReason = "selected " + selected + (candidates.size() > 1 ? "; other candidates: " + candidates.subList(1, candidates.size()) : "");
+        log.d("Source selection: " + selectionReason);
+        return selected.source;
+    }
+
+    /**
+     * @return a description of the last selection: the selected source and how its codecs are
+     * decoded on the device, and the other candidates in order of preference.
+     */
+    @Nullable
+    String getSelectionReason() {
+        return selectionReason;
+    }
+
+    /**
+     * @return the selected source and the other candidates that are equivalent to it: same format,
+     * codecs and size hints, like the same stream on several CDNs, in order of preference.
+     */
+    @NonNull
+    List<PKMediaSource> getEquivalentSources() {
+        final List<PKMediaSource> sources = new ArrayList<>();
+        if (rankedCandidates.isEmpty()) {
+            return sources;
+        }
+        final Candidate selected = rankedCandidates.get(0);
+        for (Candidate candidate : rankedCandidates) {
+            if (isEquivalent(candidate.source, selected.source)) {
+                sources.add(candidate.source);
+            }
+        }
+        return sources;
+    }
+
+    // Two sources with the same codec support may still have different renditions.
+    private static boolean isEquivalent(PKMediaSource source, PKMediaSource other) {
+        return source.getMediaFormat() == other.getMediaFormat() &&
+                TextUtils.equals(source.getCodecs(), other.getCodecs()) &&
+                source.getVideoWidth() == other.getVideoWidth() &&
+                source.getVideoHeight() == other.getVideoHeight() &&
+                source.getFrameRate() == other.getFrameRate();
+    }
+
+    private static boolean isDrmSupported(PKMediaSource source) {
+        List<PKDrmParams> drmParams = source.getDrmData();
+        if (drmParams == null || drmParams.isEmpty()) {
+            return true;
+        }
+        for (PKDrmParams params : drmParams) {
+            if (params.isSchemeSupported()) {
+                return true;
+            }
+        }
+        // This source doesn't have supported params
+        return false;
+    }
+
+    // Scores the best video codec of the source; a source may list the codecs of several renditions.
+    private static void scoreCodecs(Candidate candidate, PKMediaCapabilities capabilities) {
+        final PKMediaSource source = candidate.source;
+        if (source.getCodecs() == null) {
+            return;
+        }
+        final boolean secureOnly = requiresSecureDecoder(source, capabilities);
+
+        for (String codec : source.getCodecs().split(",")) {
+            codec = codec.trim().toLowerCase(Locale.US);
+            final String mimeType = getVideoMimeType(codec);
+            if (mimeType == null) {
+                continue;   // Audio or unknown.
+            }
+
+            final int profile = getProfile(codec, mimeType);
+            PKMediaCapabilities.Decoder bestDecoder = null;
+            CodecSupport support = CodecSupport.NO_DECODER;
+            for (PKMediaCapabilities.Decoder decoder : capabilities.getDecoders(mimeType)) {
+                if ((profile != -1 && !decoder.supportsProfile(profile)) || (secureOnly && !decoder.secure)) {
+                    continue;
+                }
+                final CodecSupport decoderSupport;
+                if (!decoder.isVideoSupported(source.getVideoWidth(), source.getVideoHeight(), source.getFrameRate())) {
+                    decoderSupport = CodecSupport.EXCEEDS_DECODER_LIMITS;
+                } else {
+                    decoderSupport = decoder.hardware ? CodecSupport.HARDWARE : CodecSupport.SOFTWARE;
+                }
+                if (bestDecoder == null || decoderSupport.rank > support.rank) {
+                    bestDecoder = decoder;
+                    support = decoderSupport;
                 }
-                // This source doesn't have supported params
-                continue;
             }
-            return source;
+
+            if (candidate.codecSupport == CodecSupport.UNKNOWN || support.rank > candidate.codecSupport.rank ||
+                    (support.rank == candidate.codecSupport.rank && getCodecEfficiency(mimeType) > candidate.codecEfficiency)) {
+                candidate.codecSupport = support;
+                candidate.codecEfficiency = getCodecEfficiency(mimeType);
+                candidate.details = codec + (isHighBitDepth(codec, mimeType) ? " 10-bit/HDR" : "") +
+                        (bestDecoder != null ? " on " + bestDecoder : secureOnly ? " has no secure decoder" : " has no decoder");
+            }
+        }
+    }
+
+    // Widevine Modular content is decoded in the secure path, unless the device only has the software
+    // security level (L3), which decrypts to the regular decoders.
+    private static boolean requiresSecureDecoder(PKMediaSource source, PKMediaCapabilities capabilities) {
+        final List<PKDrmParams> drmParams = source.getDrmData();
+        if (drmParams == null) {
+            return false;
+        }
+        for (PKDrmParams params : drmParams) {
+            if (params.getScheme() == PKDrmParams.Scheme.WidevineCENC) {
+                return !"L3".equals(capabilities.getWidevineSecurityLevel());
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static String getVideoMimeType(String codec) {
+        if (codec.startsWith("avc1") || codec.startsWith("avc3")) {
+            return "video/avc";
+        } else if (codec.startsWith("hev1") || codec.startsWith("hvc1")) {
+            return "video/hevc";
+        } else if (codec.startsWith("dvhe") || codec.startsWith("dvh1")) {
+            return "video/dolby-vision";
+        } else if (codec.startsWith("vp09") || codec.startsWith("vp9")) {
+            return "video/x-vnd.on2.vp9";
+        } else if (codec.startsWith("av01")) {
+            return "video/av01";
         }
         return null;
     }
 
+    // Returns the MediaCodecInfo.CodecProfileLevel profile of the codec string, or -1 if it's not known.
+    private static int getProfile(String codec, String mimeType) {
+        final String[] parts = codec.split("\\.");
+        try {
+            switch (mimeType) {
+                case "video/avc":
+                    if (parts.length < 2 || parts[1].length() < 2) {
+                        return -1;
+                    }
+                    switch (Integer.parseInt(parts[1].substring(0, 2), 16)) {
+                        case 66: return AVC_PROFILE_BASELINE;
+                        case 77: return AVC_PROFILE_MAIN;
+                        case 100: return AVC_PROFILE_HIGH;
+                        default: return -1;
+                    }
+                case "video/hevc":
+                    // The profile may have a profile space prefix, like "A1".
+                    switch (parts.length < 2 ? -1 : Integer.parseInt(parts[1].replaceAll("^[a-c]", ""))) {
+                        case 1: return HEVC_PROFILE_MAIN;
+                        case 2: return HEVC_PROFILE_MAIN10;
+                        default: return -1;
+                    }
+                case "video/x-vnd.on2.vp9":
+                    // VP9ProfileN is 1 << N.
+                    return parts.length < 2 ? -1 : VP9_PROFILE_0 << Integer.parseInt(parts[1]);
+                case "video/av01":
+                    if (parts.length < 4) {
+                        return -1;
+                    }
+                    return Integer.parseInt(parts[3]) == 10 ? AV1_PROFILE_MAIN10 : AV1_PROFILE_MAIN8;
+                default:
+                    return -1;
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 10-bit video is what HDR streams use; Dolby Vision is always HDR.
+    private static boolean isHighBitDepth(String codec, String mimeType) {
+        final int profile = getProfile(codec, mimeType);
+        switch (mimeType) {
+            case "video/dolby-vision":
+                return true;
+            case "video/hevc":
+                return profile == HEVC_PROFILE_MAIN10;
+            case "video/x-vnd.on2.vp9":
+                return profile > (VP9_PROFILE_0 << 1);
+            case "video/av01":
+                return profile == AV1_PROFILE_MAIN10;
+            default:
+                return false;
+        }
+    }
+
+    // Newer codecs need less bandwidth for the same quality.
+    private static int getCodecEfficiency(String mimeType) {
+        switch (mimeType) {
+            case "video/av01":
+                return 4;
+            case "video/hevc":
+            case "video/dolby-vision":
+                return 3;
+            case "video/x-vnd.on2.vp9":
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
     @NonNull
     private List<PKMediaFormat> getFormatsPriorityList() {
         List<PKMediaFormat> formatsPriorityList = new ArrayList<>();
@@ -989,6 +989,17 @@ class TrackSelectionHelper {
         textTracks.clear();
     }
 
+    /**
+     * Remove the track selections that were made for the previous media, so that the selector
+     * starts from its defaults.
+     */
+    protected void clearSelectionOverrides() {
+        DefaultTrackSelector.ParametersBuilder parametersBuilder = selector.getParameters().buildUpon();
+        parametersBuilder.clearSelectionOverrides();
+        parametersBuilder.setRendererDisabled(TRACK_TYPE_TEXT, false);
+        selector.setParameters(parametersBuilder);
+    }
+
     /**
      * Helper method which return the uniqueId of the preferred audio/text track. Base on user selection and/or
      * predefined requirements.
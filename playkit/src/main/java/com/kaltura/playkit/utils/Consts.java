@@ -57,6 +57,8 @@ public class Consts {
     public static final long NO_VALUE = -1;
 
     public static final int DEFAULT_PLAYHEAD_UPDATE_MILI = 100;
+    // Playhead update intervals up to this one are aligned to display frames.
+    public static final int PLAYHEAD_UPDATE_FRAME_MILI = 16;
 
     /**
      * Flag that indicates, that this specified track will be